@@ -0,0 +1,36 @@
+package ee.forgr.capacitor.social.login.helpers;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+final class Fixtures {
+
+  private Fixtures() {}
+
+  /** Unsigned token with the claims Apple puts in a real id token. */
+  static String appleIdToken() {
+    String header = "{\"kid\":\"W6WcOKB\",\"alg\":\"RS256\"}";
+    String payload =
+      "{\"iss\":\"https://appleid.apple.com\",\"aud\":\"app.capgo.demo\"," +
+      "\"exp\":1893456000,\"iat\":1700000000,\"sub\":\"001234.abcdef0123456789abcdef0123456789.1234\"," +
+      "\"nonce\":\"b4f2e8a1c3d5\",\"c_hash\":\"c2hhcmVkX2hhc2g\",\"email\":\"user@privaterelay.appleid.com\"," +
+      "\"email_verified\":true,\"is_private_email\":true,\"auth_time\":1700000000,\"nonce_supported\":true}";
+    return (
+      encode(header) + "." + encode(payload) + "." + opaqueToken(342)
+    );
+  }
+
+  static String opaqueToken(int length) {
+    StringBuilder builder = new StringBuilder(length);
+    for (int i = 0; i < length; i++) {
+      builder.append((char) ('a' + (i * 7) % 26));
+    }
+    return builder.toString();
+  }
+
+  private static String encode(String json) {
+    return Base64.getUrlEncoder()
+      .withoutPadding()
+      .encodeToString(json.getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,40 @@
+package ee.forgr.capacitor.social.login.helpers;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.json.JSONArray;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Parsing the scopes / permissions passed in the login options. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class JsonHelperBenchmark {
+
+  private JSONArray scopes;
+
+  @Setup
+  public void setUp() {
+    scopes = new JSONArray()
+      .put("email")
+      .put("public_profile")
+      .put("user_friends")
+      .put("user_birthday");
+  }
+
+  @Benchmark
+  public List<String> jsonArrayToList() throws Exception {
+    return JsonHelper.jsonArrayToList(scopes);
+  }
+
+  @Benchmark
+  public String toStringArrayAndJoin() throws Exception {
+    return String.join("%20", JsonHelper.toStringArray(scopes));
+  }
+}
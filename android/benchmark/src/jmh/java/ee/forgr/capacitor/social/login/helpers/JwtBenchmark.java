@@ -0,0 +1,38 @@
+package ee.forgr.capacitor.social.login.helpers;
+
+import java.util.concurrent.TimeUnit;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Cost of reading an Apple id token, as done on every login: the header for
+ * the signing key, then the claims.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class JwtBenchmark {
+
+  private String idToken;
+
+  @Setup
+  public void setUp() {
+    idToken = Fixtures.appleIdToken();
+  }
+
+  @Benchmark
+  public JSONObject decodeHeader() throws Exception {
+    return JwtHelper.decodeHeader(idToken);
+  }
+
+  @Benchmark
+  public JwtClaims claimReader() {
+    return JwtClaimReader.read(idToken);
+  }
+}
@@ -0,0 +1,43 @@
+package ee.forgr.capacitor.social.login.helpers;
+
+import java.util.concurrent.TimeUnit;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Building and serializing an Apple login response with the provider's code.
+ * Capacitor's JSObject is a thin JSONObject subclass, so plain JSONObjects are
+ * filled here.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ResponseBenchmark {
+
+  private String idToken;
+  private String accessToken;
+
+  @Setup
+  public void setUp() {
+    idToken = Fixtures.appleIdToken();
+    accessToken = Fixtures.opaqueToken(64);
+  }
+
+  @Benchmark
+  public String buildAppleLoginResponse() throws Exception {
+    JwtClaims claims = JwtClaimReader.read(idToken);
+    return AppleLoginResponse.putLogin(
+      new JSONObject(),
+      new JSONObject(),
+      AppleLoginResponse.putAccessToken(new JSONObject(), accessToken, -1),
+      AppleLoginResponse.putProfile(new JSONObject(), claims),
+      idToken
+    ).toString();
+  }
+}
@@ -0,0 +1,92 @@
+package ee.forgr.capacitor.social.login.helpers;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Reading Apple's token endpoint response. Run with -prof gc to compare the
+ * bytes allocated per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TokenResponseBenchmark {
+
+  private static final MediaType JSON = MediaType.get("application/json");
+  private static final Request REQUEST = new Request.Builder()
+    .url("https://appleid.apple.com/auth/token")
+    .build();
+
+  private byte[] body;
+
+  @Setup
+  public void setUp() {
+    String json =
+      "{\"access_token\":\"" +
+      Fixtures.opaqueToken(64) +
+      "\",\"token_type\":\"Bearer\",\"expires_in\":3600," +
+      "\"refresh_token\":\"" +
+      Fixtures.opaqueToken(64) +
+      "\",\"id_token\":\"" +
+      Fixtures.appleIdToken() +
+      "\"}";
+    body = json.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private Reader charStream() {
+    return new InputStreamReader(
+      new ByteArrayInputStream(body),
+      StandardCharsets.UTF_8
+    );
+  }
+
+  @Benchmark
+  public void streaming(Blackhole blackhole) throws Exception {
+    TokenResponseParser.TokenResponse tokens = TokenResponseParser.parse(
+      charStream()
+    );
+    blackhole.consume(tokens.accessToken);
+    blackhole.consume(tokens.refreshToken);
+    blackhole.consume(tokens.idToken);
+    blackhole.consume(tokens.expiresIn);
+  }
+
+  /** The OkHttp entry point the Apple code exchange and refresh go through. */
+  @Benchmark
+  public void fromResponse(Blackhole blackhole) throws Exception {
+    Response response = new Response.Builder()
+      .request(REQUEST)
+      .protocol(Protocol.HTTP_2)
+      .code(200)
+      .message("OK")
+      .body(ResponseBody.create(body, JSON))
+      .build();
+    try {
+      TokenResponseParser.TokenResponse tokens = TokenResponseParser.parse(
+        response
+      );
+      blackhole.consume(tokens.accessToken);
+      blackhole.consume(tokens.refreshToken);
+      blackhole.consume(tokens.idToken);
+      blackhole.consume(tokens.expiresIn);
+    } finally {
+      response.close();
+    }
+  }
+}
@@ -0,0 +1,48 @@
+package ee.forgr.capacitor.social.login.helpers;
+
+import java.io.ByteArrayInputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Serializing and restoring the persisted login state. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TokenStoreBenchmark {
+
+  private Map<String, Map<String, String>> state;
+  private byte[] encoded;
+
+  @Setup
+  public void setUp() throws Exception {
+    Map<String, String> apple = new HashMap<>();
+    apple.put("idToken", Fixtures.appleIdToken());
+    apple.put("accessToken", Fixtures.opaqueToken(64));
+    apple.put("refreshToken", Fixtures.opaqueToken(64));
+    Map<String, String> google = new HashMap<>();
+    google.put("idToken", Fixtures.appleIdToken());
+    state = new HashMap<>();
+    state.put("apple", apple);
+    state.put("google", google);
+
+    encoded = TokenStore.encode(state);
+  }
+
+  @Benchmark
+  public byte[] encode() throws Exception {
+    return TokenStore.encode(state);
+  }
+
+  @Benchmark
+  public Map<String, Map<String, String>> decode() throws Exception {
+    return TokenStore.decode(new ByteArrayInputStream(encoded));
+  }
+}
@@ -0,0 +1,55 @@
+package ee.forgr.capacitor.social.login.helpers;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Objects the Apple provider resolves with. They are filled in rather than
+ * created here so the provider can pass Capacitor's JSObject.
+ */
+public final class AppleLoginResponse {
+
+  private AppleLoginResponse() {}
+
+  /** The login response, with the result object nested under "result". */
+  public static <T extends JSONObject> T putLogin(
+    T response,
+    T result,
+    JSONObject accessToken,
+    JSONObject profile,
+    String idToken
+  ) throws JSONException {
+    result.put("accessToken", accessToken);
+    result.put("profile", profile);
+    result.put("idToken", idToken);
+    response.put("provider", "apple");
+    response.put("result", result);
+    return response;
+  }
+
+  /** @param expiresInSeconds negative when the token endpoint did not say */
+  public static <T extends JSONObject> T putAccessToken(
+    T token,
+    String accessToken,
+    long expiresInSeconds
+  ) throws JSONException {
+    token.put("token", accessToken);
+    if (expiresInSeconds >= 0) {
+      token.put(
+        "expires",
+        System.currentTimeMillis() + expiresInSeconds * 1000
+      );
+    }
+    return token;
+  }
+
+  public static <T extends JSONObject> T putProfile(T profile, JwtClaims claims)
+    throws JSONException {
+    profile.put("user", claims.getSubject());
+    profile.put("email", claims.getEmail());
+    // Apple doesn't provide given name and family name in the ID token
+    profile.put("givenName", JSONObject.NULL);
+    profile.put("familyName", JSONObject.NULL);
+    return profile;
+  }
+}
@@ -0,0 +1,96 @@
+package ee.forgr.capacitor.social.login.helpers;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Plugin-wide executor for the blocking parts of the auth flows
+ * (Credential Manager callbacks, GoogleAuthUtil, ...).
+ * Threads are created on demand, named, and die after being idle.
+ * A single timer thread runs delayed work (coalesced writes, expiry timers).
+ */
+public class AuthExecutor implements Executor {
+
+  private static final String THREAD_PREFIX = "CapgoSocialLogin-auth-";
+  private static final String TIMER_PREFIX = "CapgoSocialLogin-timer-";
+  private static final int MAX_THREADS = 4;
+  private static final int QUEUE_CAPACITY = 64;
+  private static final long KEEP_ALIVE_SECONDS = 30;
+
+  private final ThreadPoolExecutor pool;
+  private final ScheduledThreadPoolExecutor scheduler;
+
+  public AuthExecutor() {
+    this.pool = new ThreadPoolExecutor(
+      MAX_THREADS,
+      MAX_THREADS,
+      KEEP_ALIVE_SECONDS,
+      TimeUnit.SECONDS,
+      new LinkedBlockingQueue<>(QUEUE_CAPACITY),
+      new NamedThreadFactory(THREAD_PREFIX)
+    );
+    this.pool.allowCoreThreadTimeOut(true);
+    this.scheduler = new ScheduledThreadPoolExecutor(
+      1,
+      new NamedThreadFactory(TIMER_PREFIX)
+    );
+    this.scheduler.setRemoveOnCancelPolicy(true);
+  }
+
+  @Override
+  public void execute(Runnable command) {
+    pool.execute(command);
+  }
+
+  public ScheduledExecutorService getScheduler() {
+    return scheduler;
+  }
+
+  public void shutdown() {
+    scheduler.shutdown();
+    pool.shutdown();
+  }
+
+  public int getActiveCount() {
+    return pool.getActiveCount();
+  }
+
+  public int getQueuedCount() {
+    return pool.getQueue().size();
+  }
+
+  public long getCompletedCount() {
+    return pool.getCompletedTaskCount();
+  }
+
+  public int getPoolSize() {
+    return pool.getPoolSize();
+  }
+
+  public int getLargestPoolSize() {
+    return pool.getLargestPoolSize();
+  }
+
+  private static class NamedThreadFactory implements ThreadFactory {
+
+    private final String prefix;
+    private final AtomicInteger counter = new AtomicInteger();
+
+    NamedThreadFactory(String prefix) {
+      this.prefix = prefix;
+    }
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
@@ -0,0 +1,65 @@
+package ee.forgr.capacitor.social.login.helpers;
+
+/**
+ * Decoder for the base64url segments of a JWT (padding optional).
+ * Works on a range of the token so segments do not need to be split out first.
+ */
+public final class Base64Url {
+
+  private static final int[] DECODE = new int[128];
+
+  static {
+    java.util.Arrays.fill(DECODE, -1);
+    for (int i = 0; i < 26; i++) {
+      DECODE['A' + i] = i;
+      DECODE['a' + i] = 26 + i;
+    }
+    for (int i = 0; i < 10; i++) {
+      DECODE['0' + i] = 52 + i;
+    }
+    DECODE['-'] = 62;
+    DECODE['_'] = 63;
+    // Also accept the standard alphabet
+    DECODE['+'] = 62;
+    DECODE['/'] = 63;
+  }
+
+  private Base64Url() {}
+
+  public static byte[] decode(CharSequence source) {
+    return decode(source, 0, source.length());
+  }
+
+  /**
+   * Decode {@code source[start, end)}.
+   * @throws IllegalArgumentException when the range is not valid base64url
+   */
+  public static byte[] decode(CharSequence source, int start, int end) {
+    while (end > start && source.charAt(end - 1) == '=') {
+      end--;
+    }
+    int length = end - start;
+    if (length % 4 == 1) {
+      throw new IllegalArgumentException("Invalid base64url length");
+    }
+    byte[] out = new byte[(length * 3) / 4];
+    int buffer = 0;
+    int bits = 0;
+    int position = 0;
+    for (int i = start; i < end; i++) {
+      char c = source.charAt(i);
+      int value = c < 128 ? DECODE[c] : -1;
+      if (value < 0) {
+        throw new IllegalArgumentException("Invalid base64url character " + c);
+      }
+      buffer = (buffer << 6) | value;
+      bits += 6;
+      if (bits >= 8) {
+        bits -= 8;
+        out[position++] = (byte) (buffer >> bits);
+        buffer &= (1 << bits) - 1;
+      }
+    }
+    return out;
+  }
+}
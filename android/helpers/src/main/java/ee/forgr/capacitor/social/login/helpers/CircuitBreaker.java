@@ -0,0 +1,79 @@
+package ee.forgr.capacitor.social.login.helpers;
+
+/**
+ * Consecutive-failure circuit breaker.
+ * <p>
+ * After {@code failureThreshold} failures in a row the circuit opens and
+ * requests are refused for {@code openMs}. Then a single trial request is let
+ * through: its success closes the circuit, its failure opens it again.
+ */
+public class CircuitBreaker {
+
+  public enum State {
+    CLOSED,
+    OPEN,
+    HALF_OPEN,
+  }
+
+  private final int failureThreshold;
+  private final long openNanos;
+
+  private State state = State.CLOSED;
+  private int consecutiveFailures;
+  private long openedAt;
+  private boolean trialInFlight;
+  private long openedCount;
+
+  public CircuitBreaker(int failureThreshold, long openMs) {
+    this.failureThreshold = failureThreshold;
+    this.openNanos = openMs * 1_000_000;
+  }
+
+  /** Whether a request may go out now. */
+  public synchronized boolean allowRequest() {
+    if (state == State.OPEN && System.nanoTime() - openedAt >= openNanos) {
+      state = State.HALF_OPEN;
+      trialInFlight = false;
+    }
+    switch (state) {
+      case CLOSED:
+        return true;
+      case HALF_OPEN:
+        if (!trialInFlight) {
+          trialInFlight = true;
+          return true;
+        }
+        break;
+      default:
+        break;
+    }
+    return false;
+  }
+
+  public synchronized void recordSuccess() {
+    state = State.CLOSED;
+    consecutiveFailures = 0;
+    trialInFlight = false;
+  }
+
+  public synchronized void recordFailure() {
+    consecutiveFailures++;
+    if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+      if (state != State.OPEN) {
+        openedCount++;
+      }
+      state = State.OPEN;
+      openedAt = System.nanoTime();
+      trialInFlight = false;
+    }
+  }
+
+  public synchronized State getState() {
+    return state;
+  }
+
+  /** Number of times the circuit opened. */
+  public synchronized long getOpenedCount() {
+    return openedCount;
+  }
+}
@@ -0,0 +1,27 @@
+package ee.forgr.capacitor.social.login.helpers;
+
+import java.io.IOException;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+public class HttpJwksFetcher implements JwksKeyStore.Fetcher {
+
+  private final HttpTransport transport;
+
+  public HttpJwksFetcher(HttpTransport transport) {
+    this.transport = transport;
+  }
+
+  @Override
+  public String fetch(String url) throws IOException {
+    Request request = new Request.Builder().url(url).get().build();
+    try (Response response = transport.newCall(request).execute()) {
+      ResponseBody body = response.body();
+      if (!response.isSuccessful() || body == null) {
+        throw new IOException("Unexpected code " + response.code());
+      }
+      return body.string();
+    }
+  }
+}
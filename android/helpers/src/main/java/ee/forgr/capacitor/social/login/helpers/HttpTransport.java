@@ -0,0 +1,14 @@
+package ee.forgr.capacitor.social.login.helpers;
+
+import okhttp3.Call;
+import okhttp3.Request;
+
+/**
+ * HTTP transport used by the providers to talk to token endpoints.
+ * The default implementation is {@link OkHttpTransport}; tests can plug in
+ * their own to point the providers at a local stand-in server.
+ */
+public interface HttpTransport {
+  Call newCall(Request request);
+  void shutdown();
+}
@@ -0,0 +1,135 @@
+package ee.forgr.capacitor.social.login.helpers;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.Arrays;
+import java.util.List;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * On-device check of an OpenID Connect id token: RS256 signature against the
+ * provider keys, issuer, audience, expiry and (when given) nonce.
+ */
+public class IdTokenVerifier {
+
+  public static final String APPLE_JWKS_URL =
+    "https://appleid.apple.com/auth/keys";
+  public static final String GOOGLE_JWKS_URL =
+    "https://www.googleapis.com/oauth2/v3/certs";
+  public static final List<String> APPLE_ISSUERS = Arrays.asList(
+    "https://appleid.apple.com"
+  );
+  public static final List<String> GOOGLE_ISSUERS = Arrays.asList(
+    "https://accounts.google.com",
+    "accounts.google.com"
+  );
+
+  private static final long CLOCK_SKEW_SECONDS = 60;
+
+  public static class VerificationException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    public VerificationException(String message) {
+      super(message);
+    }
+
+    public VerificationException(String message, Throwable cause) {
+      super(message, cause);
+    }
+  }
+
+  private final JwksKeyStore keyStore;
+  private final String jwksUrl;
+  private final List<String> issuers;
+  private final String audience;
+
+  public IdTokenVerifier(
+    JwksKeyStore keyStore,
+    String jwksUrl,
+    List<String> issuers,
+    String audience
+  ) {
+    this.keyStore = keyStore;
+    this.jwksUrl = jwksUrl;
+    this.issuers = issuers;
+    this.audience = audience;
+  }
+
+  /** Download the provider keys ahead of the first verification. */
+  public void prefetchKeys() {
+    keyStore.prefetch(jwksUrl);
+  }
+
+  /**
+   * May block to fetch the provider keys, call it off the main thread.
+   *
+   * @param nonce expected nonce, or null to skip the check
+   * @return the verified claims
+   */
+  public JwtClaims verify(String idToken, String nonce)
+    throws VerificationException {
+    if (idToken == null) {
+      throw new VerificationException("Missing id token");
+    }
+    JSONObject header;
+    JwtClaims claims;
+    try {
+      header = JwtHelper.decodeHeader(idToken);
+      claims = JwtClaimReader.read(idToken);
+    } catch (JSONException | IllegalArgumentException e) {
+      throw new VerificationException("Malformed id token", e);
+    }
+
+    if (!"RS256".equals(header.optString("alg"))) {
+      throw new VerificationException(
+        "Unsupported algorithm " + header.optString("alg")
+      );
+    }
+    PublicKey key;
+    try {
+      key = keyStore.getKey(jwksUrl, header.optString("kid"));
+    } catch (IOException e) {
+      throw new VerificationException("Cannot get signing key", e);
+    }
+    if (!hasValidSignature(idToken, key)) {
+      throw new VerificationException("Invalid id token signature");
+    }
+
+    if (!issuers.contains(claims.getIssuer())) {
+      throw new VerificationException("Unexpected issuer " + claims.getIssuer());
+    }
+    if (!claims.getAudience().contains(audience)) {
+      throw new VerificationException("Id token is not for " + audience);
+    }
+    long now = System.currentTimeMillis() / 1000;
+    if (claims.getExpiresAt() + CLOCK_SKEW_SECONDS < now) {
+      throw new VerificationException("Id token expired");
+    }
+    if (nonce != null && !nonce.equals(claims.getNonce())) {
+      throw new VerificationException("Nonce mismatch");
+    }
+    return claims;
+  }
+
+  private static boolean hasValidSignature(String idToken, PublicKey key)
+    throws VerificationException {
+    int lastDot = idToken.lastIndexOf('.');
+    try {
+      Signature signature = Signature.getInstance("SHA256withRSA");
+      signature.initVerify(key);
+      signature.update(
+        idToken.substring(0, lastDot).getBytes(StandardCharsets.US_ASCII)
+      );
+      return signature.verify(
+        Base64Url.decode(idToken, lastDot + 1, idToken.length())
+      );
+    } catch (GeneralSecurityException | IllegalArgumentException e) {
+      throw new VerificationException("Cannot check id token signature", e);
+    }
+  }
+}
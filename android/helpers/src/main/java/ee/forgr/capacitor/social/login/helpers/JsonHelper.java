@@ -15,4 +15,12 @@ public class JsonHelper {
     }
     return list;
   }
+
+  public static String[] toStringArray(JSONArray array) throws JSONException {
+    String[] stringArray = new String[array.length()];
+    for (int i = 0; i < array.length(); i++) {
+      stringArray[i] = array.getString(i);
+    }
+    return stringArray;
+  }
 }
@@ -0,0 +1,305 @@
+package ee.forgr.capacitor.social.login.helpers;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Pull reader for the small JSON documents the plugin reads on hot paths
+ * (token endpoint responses, JWT payloads). Values that are not asked for
+ * are skipped without building a tree or buffering the input.
+ * <p>
+ * Objects are read with {@link #beginObject()} then {@link #nextName()}
+ * until it returns null, arrays with {@link #beginArray()} then
+ * {@link #hasNextElement()}.
+ */
+final class JsonStreamReader {
+
+  private static final int MAX_DEPTH = 32;
+
+  private final Reader reader;
+  private final char[] buffer = new char[512];
+  private int position;
+  private int limit;
+  private int peeked = -2;
+  // Whether the innermost open object or array is still before its first entry
+  private final boolean[] first = new boolean[MAX_DEPTH];
+  private int depth;
+
+  JsonStreamReader(Reader reader) {
+    this.reader = reader;
+  }
+
+  void beginObject() throws IOException {
+    expect('{');
+    push();
+  }
+
+  /** Name of the next member, or null once the object is closed. */
+  String nextName() throws IOException {
+    if (!hasNext('}')) {
+      return null;
+    }
+    expect('"');
+    String name = readString();
+    expect(':');
+    return name;
+  }
+
+  void beginArray() throws IOException {
+    expect('[');
+    push();
+  }
+
+  /** Whether the array has another element, false once it is closed. */
+  boolean hasNextElement() throws IOException {
+    return hasNext(']');
+  }
+
+  /** Next significant character, without consuming it. -1 at the end. */
+  int peek() throws IOException {
+    int c = nextSignificant();
+    peeked = c;
+    return c;
+  }
+
+  String nextNullableString() throws IOException {
+    int c = nextSignificant();
+    if (c == '"') {
+      return readString();
+    }
+    if (c == 'n') {
+      expectLiteral("ull");
+      return null;
+    }
+    throw syntaxError("a string", c);
+  }
+
+  /**
+   * Integer part of a number. Numbers sent as strings are accepted, null or
+   * an unparsable string gives {@code fallback}.
+   */
+  long nextLong(long fallback) throws IOException {
+    int c = nextSignificant();
+    if (c == '"') {
+      try {
+        return Long.parseLong(readString().trim());
+      } catch (NumberFormatException e) {
+        return fallback;
+      }
+    }
+    if (c == 'n') {
+      expectLiteral("ull");
+      return fallback;
+    }
+    boolean negative = c == '-';
+    if (negative) {
+      c = read();
+    }
+    if (c < '0' || c > '9') {
+      throw syntaxError("a number", c);
+    }
+    long value = 0;
+    while (c >= '0' && c <= '9') {
+      value = value * 10 + (c - '0');
+      c = read();
+    }
+    // Ignore a fractional part or an exponent
+    while (
+      c == '.' ||
+      c == 'e' ||
+      c == 'E' ||
+      c == '+' ||
+      c == '-' ||
+      (c >= '0' && c <= '9')
+    ) {
+      c = read();
+    }
+    peeked = c;
+    return negative ? -value : value;
+  }
+
+  void skipValue() throws IOException {
+    int c = nextSignificant();
+    switch (c) {
+      case '"':
+        skipString();
+        return;
+      case '{':
+      case '[':
+        skipContainer();
+        return;
+      case -1:
+        throw syntaxError("a value", c);
+      default:
+        // Number or literal: consume until a delimiter
+        while (
+          c != -1 && c != ',' && c != '}' && c != ']' && !isWhitespace(c)
+        ) {
+          c = read();
+        }
+        peeked = c;
+    }
+  }
+
+  private void push() throws IOException {
+    if (depth == MAX_DEPTH) {
+      throw new IOException("Malformed JSON: nested too deeply");
+    }
+    first[depth++] = true;
+  }
+
+  private boolean hasNext(char close) throws IOException {
+    if (depth == 0) {
+      throw new IOException("Malformed JSON: no open object or array");
+    }
+    int c = nextSignificant();
+    if (c == close) {
+      depth--;
+      return false;
+    }
+    if (!first[depth - 1]) {
+      if (c != ',') {
+        throw syntaxError("',' or '" + close + "'", c);
+      }
+      c = nextSignificant();
+    }
+    first[depth - 1] = false;
+    peeked = c;
+    return true;
+  }
+
+  /** Called after the opening quote. */
+  private String readString() throws IOException {
+    StringBuilder builder = new StringBuilder();
+    while (true) {
+      int c = read();
+      if (c == '"') {
+        return builder.toString();
+      }
+      if (c == -1) {
+        throw new IOException("Malformed JSON: unterminated string");
+      }
+      if (c == '\\') {
+        builder.append(readEscape());
+      } else {
+        builder.append((char) c);
+      }
+    }
+  }
+
+  private char readEscape() throws IOException {
+    int c = read();
+    switch (c) {
+      case 'b':
+        return '\b';
+      case 'f':
+        return '\f';
+      case 'n':
+        return '\n';
+      case 'r':
+        return '\r';
+      case 't':
+        return '\t';
+      case 'u':
+        int code = 0;
+        for (int i = 0; i < 4; i++) {
+          int digit = Character.digit(read(), 16);
+          if (digit < 0) {
+            throw new IOException("Malformed JSON: invalid unicode escape");
+          }
+          code = (code << 4) | digit;
+        }
+        return (char) code;
+      case '"':
+      case '\\':
+      case '/':
+        return (char) c;
+      default:
+        throw syntaxError("an escape sequence", c);
+    }
+  }
+
+  /** Called after the opening bracket, tracks nesting without recursion. */
+  private void skipContainer() throws IOException {
+    int nesting = 1;
+    while (nesting > 0) {
+      int c = read();
+      if (c == -1) {
+        throw new IOException("Malformed JSON: unterminated object or array");
+      } else if (c == '"') {
+        skipString();
+      } else if (c == '{' || c == '[') {
+        nesting++;
+      } else if (c == '}' || c == ']') {
+        nesting--;
+      }
+    }
+  }
+
+  private void skipString() throws IOException {
+    while (true) {
+      int c = read();
+      if (c == '"') {
+        return;
+      }
+      if (c == '\\') {
+        readEscape();
+      } else if (c == -1) {
+        throw new IOException("Malformed JSON: unterminated string");
+      }
+    }
+  }
+
+  private void expect(char expected) throws IOException {
+    int c = nextSignificant();
+    if (c != expected) {
+      throw syntaxError("'" + expected + "'", c);
+    }
+  }
+
+  private void expectLiteral(String rest) throws IOException {
+    for (int i = 0; i < rest.length(); i++) {
+      if (read() != rest.charAt(i)) {
+        throw new IOException("Malformed JSON: invalid literal");
+      }
+    }
+  }
+
+  private int nextSignificant() throws IOException {
+    int c = read();
+    while (isWhitespace(c)) {
+      c = read();
+    }
+    return c;
+  }
+
+  private int read() throws IOException {
+    if (peeked != -2) {
+      int c = peeked;
+      peeked = -2;
+      return c;
+    }
+    if (position == limit) {
+      limit = reader.read(buffer, 0, buffer.length);
+      position = 0;
+      if (limit <= 0) {
+        limit = 0;
+        return -1;
+      }
+    }
+    return buffer[position++];
+  }
+
+  private static boolean isWhitespace(int c) {
+    return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+  }
+
+  private static IOException syntaxError(String expected, int found) {
+    return new IOException(
+      "Malformed JSON: expected " +
+      expected +
+      " but found " +
+      (found == -1 ? "end of input" : "'" + (char) found + "'")
+    );
+  }
+}
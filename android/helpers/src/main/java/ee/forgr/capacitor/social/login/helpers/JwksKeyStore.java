@@ -0,0 +1,247 @@
+package ee.forgr.capacitor.social.login.helpers;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.spec.RSAPublicKeySpec;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Signing keys of the identity providers, looked up by JWKS url and key id.
+ * <p>
+ * Key sets are kept in memory and persisted in the {@link TokenStore}, so
+ * after the first fetch a verification needs no network until the TTL
+ * expires. An unknown key id (provider rotated its keys) triggers a refetch,
+ * at most once per {@code minRefetchIntervalMs}. Fetches run outside the
+ * lock and concurrent lookups of a url share one fetch; when a refetch fails
+ * the stale keys keep being served.
+ */
+public class JwksKeyStore {
+
+  private static final String TOKEN_STORE_NAMESPACE = "jwks";
+  private static final String FETCHED_AT_SUFFIX = "#fetchedAt";
+
+  public interface Fetcher {
+    /** Blocking download of the JWKS document. */
+    String fetch(String url) throws IOException;
+  }
+
+  private static class KeySet {
+
+    final Map<String, PublicKey> keys;
+    final long fetchedAt;
+
+    KeySet(Map<String, PublicKey> keys, long fetchedAt) {
+      this.keys = keys;
+      this.fetchedAt = fetchedAt;
+    }
+  }
+
+  private final Fetcher fetcher;
+  private final TokenStore tokenStore;
+  private final long ttlMs;
+  private final long minRefetchIntervalMs;
+  private final LogSink log;
+  private final Object lock = new Object();
+  private final Map<String, KeySet> keySets = new HashMap<>();
+  // Fetch running for each url, joined instead of fetching twice
+  private final Map<String, FutureTask<KeySet>> inFlight = new HashMap<>();
+  private boolean restored;
+  private long fetchCount;
+
+  public JwksKeyStore(
+    Fetcher fetcher,
+    TokenStore tokenStore,
+    long ttlMs,
+    long minRefetchIntervalMs,
+    LogSink log
+  ) {
+    this.fetcher = fetcher;
+    this.tokenStore = tokenStore;
+    this.ttlMs = ttlMs;
+    this.minRefetchIntervalMs = minRefetchIntervalMs;
+    this.log = log;
+  }
+
+  /**
+   * Key used to sign a token. May block on the network, call it off the
+   * main thread.
+   *
+   * @throws IOException when the keys cannot be fetched or the kid is unknown
+   */
+  public PublicKey getKey(String jwksUrl, String kid) throws IOException {
+    KeySet keySet;
+    boolean refetch;
+    synchronized (lock) {
+      restore();
+      long now = System.currentTimeMillis();
+      keySet = keySets.get(jwksUrl);
+      boolean stale = keySet == null || now - keySet.fetchedAt >= ttlMs;
+      boolean kidMiss =
+        keySet != null &&
+        !keySet.keys.containsKey(kid) &&
+        now - keySet.fetchedAt >= minRefetchIntervalMs;
+      refetch = stale || kidMiss;
+    }
+    if (refetch) {
+      try {
+        keySet = fetchOnce(jwksUrl);
+      } catch (IOException e) {
+        // Stale keys are still better than no keys when offline
+        if (keySet == null || !keySet.keys.containsKey(kid)) {
+          throw e;
+        }
+        log.warn("Cannot refresh " + jwksUrl, e);
+      }
+    }
+    PublicKey key = keySet.keys.get(kid);
+    if (key == null) {
+      throw new IOException("Unknown signing key " + kid);
+    }
+    return key;
+  }
+
+  /** Download the keys now if they are missing or stale. */
+  public void prefetch(String jwksUrl) {
+    synchronized (lock) {
+      restore();
+      KeySet keySet = keySets.get(jwksUrl);
+      if (
+        keySet != null && System.currentTimeMillis() - keySet.fetchedAt < ttlMs
+      ) {
+        return;
+      }
+    }
+    try {
+      fetchOnce(jwksUrl);
+    } catch (IOException e) {
+      log.warn("Cannot prefetch " + jwksUrl, e);
+    }
+  }
+
+  /** Number of network fetches so far. */
+  public long getFetchCount() {
+    synchronized (lock) {
+      return fetchCount;
+    }
+  }
+
+  /**
+   * Fetch the keys without holding the lock. Callers arriving while a fetch
+   * of the same url runs wait for its result instead of fetching again.
+   */
+  private KeySet fetchOnce(String jwksUrl) throws IOException {
+    FutureTask<KeySet> task;
+    boolean owner = false;
+    synchronized (lock) {
+      task = inFlight.get(jwksUrl);
+      if (task == null) {
+        task = new FutureTask<>(() -> fetch(jwksUrl));
+        inFlight.put(jwksUrl, task);
+        owner = true;
+      }
+    }
+    if (owner) {
+      try {
+        task.run();
+      } finally {
+        synchronized (lock) {
+          inFlight.remove(jwksUrl);
+        }
+      }
+    }
+    try {
+      return task.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while fetching " + jwksUrl);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      throw new IOException("Cannot fetch " + jwksUrl, cause);
+    }
+  }
+
+  private KeySet fetch(String jwksUrl) throws IOException {
+    synchronized (lock) {
+      fetchCount++;
+    }
+    long now = System.currentTimeMillis();
+    String json = fetcher.fetch(jwksUrl);
+    KeySet keySet = new KeySet(parse(json), now);
+    synchronized (lock) {
+      keySets.put(jwksUrl, keySet);
+      Map<String, String> persisted = new HashMap<>(
+        tokenStore.get(TOKEN_STORE_NAMESPACE)
+      );
+      persisted.put(jwksUrl, json);
+      persisted.put(jwksUrl + FETCHED_AT_SUFFIX, Long.toString(now));
+      tokenStore.put(TOKEN_STORE_NAMESPACE, persisted);
+    }
+    return keySet;
+  }
+
+  private void restore() {
+    if (restored) {
+      return;
+    }
+    restored = true;
+    Map<String, String> persisted = tokenStore.get(TOKEN_STORE_NAMESPACE);
+    for (Map.Entry<String, String> entry : persisted.entrySet()) {
+      String url = entry.getKey();
+      if (url.endsWith(FETCHED_AT_SUFFIX)) {
+        continue;
+      }
+      try {
+        long fetchedAt = Long.parseLong(
+          persisted.get(url + FETCHED_AT_SUFFIX)
+        );
+        keySets.put(url, new KeySet(parse(entry.getValue()), fetchedAt));
+      } catch (IOException | NumberFormatException e) {
+        log.warn("Discarding persisted keys of " + url, e);
+      }
+    }
+  }
+
+  static Map<String, PublicKey> parse(String json) throws IOException {
+    try {
+      JSONArray keys = new JSONObject(json).getJSONArray("keys");
+      Map<String, PublicKey> result = new HashMap<>();
+      KeyFactory factory = KeyFactory.getInstance("RSA");
+      for (int i = 0; i < keys.length(); i++) {
+        JSONObject key = keys.getJSONObject(i);
+        if (!"RSA".equals(key.optString("kty"))) {
+          continue;
+        }
+        BigInteger modulus = new BigInteger(
+          1,
+          Base64Url.decode(key.getString("n"))
+        );
+        BigInteger exponent = new BigInteger(
+          1,
+          Base64Url.decode(key.getString("e"))
+        );
+        result.put(
+          key.getString("kid"),
+          factory.generatePublic(new RSAPublicKeySpec(modulus, exponent))
+        );
+      }
+      return result;
+    } catch (JSONException | IllegalArgumentException e) {
+      throw new IOException("Invalid JWKS document", e);
+    } catch (GeneralSecurityException e) {
+      throw new IOException("Invalid JWKS key", e);
+    }
+  }
+}
@@ -0,0 +1,117 @@
+package ee.forgr.capacitor.social.login.helpers;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the claims of {@link JwtClaims} from a JWT payload.
+ * <p>
+ * The payload segment is base64url decoded in place from the token (no
+ * split), then streamed through a {@link JsonStreamReader}: only the wanted
+ * values become Strings and nothing else is materialized.
+ * The signature is not checked here, see {@link IdTokenVerifier}.
+ */
+public final class JwtClaimReader {
+
+  private JwtClaimReader() {}
+
+  /** @throws IllegalArgumentException when the token or payload is malformed */
+  public static JwtClaims read(String jwt) {
+    int first = jwt.indexOf('.');
+    int second = first < 0 ? -1 : jwt.indexOf('.', first + 1);
+    if (second < 0 || jwt.indexOf('.', second + 1) >= 0) {
+      throw new IllegalArgumentException("Not a JWT");
+    }
+    byte[] payload = Base64Url.decode(jwt, first + 1, second);
+    try {
+      return readClaims(
+        new JsonStreamReader(
+          new InputStreamReader(
+            new ByteArrayInputStream(payload),
+            StandardCharsets.UTF_8
+          )
+        )
+      );
+    } catch (IOException e) {
+      throw new IllegalArgumentException(
+        "Malformed JWT payload: " + e.getMessage(),
+        e
+      );
+    }
+  }
+
+  private static JwtClaims readClaims(JsonStreamReader json)
+    throws IOException {
+    String subject = null;
+    String email = null;
+    String issuer = null;
+    String nonce = null;
+    List<String> audience = new ArrayList<>(1);
+    long expiresAt = 0;
+    long issuedAt = 0;
+
+    json.beginObject();
+    String name;
+    while ((name = json.nextName()) != null) {
+      switch (name) {
+        case "sub":
+          subject = json.nextNullableString();
+          break;
+        case "email":
+          email = json.nextNullableString();
+          break;
+        case "iss":
+          issuer = json.nextNullableString();
+          break;
+        case "nonce":
+          nonce = json.nextNullableString();
+          break;
+        case "aud":
+          readAudience(json, audience);
+          break;
+        case "exp":
+          expiresAt = json.nextLong(0);
+          break;
+        case "iat":
+          issuedAt = json.nextLong(0);
+          break;
+        default:
+          json.skipValue();
+      }
+    }
+    return new JwtClaims(
+      subject,
+      email,
+      issuer,
+      nonce,
+      audience,
+      expiresAt,
+      issuedAt
+    );
+  }
+
+  /** A single audience may be sent as a string instead of an array. */
+  private static void readAudience(
+    JsonStreamReader json,
+    List<String> audience
+  ) throws IOException {
+    if (json.peek() != '[') {
+      addIfPresent(audience, json.nextNullableString());
+      return;
+    }
+    json.beginArray();
+    while (json.hasNextElement()) {
+      addIfPresent(audience, json.nextNullableString());
+    }
+  }
+
+  private static void addIfPresent(List<String> audience, String value) {
+    if (value != null) {
+      audience.add(value);
+    }
+  }
+}
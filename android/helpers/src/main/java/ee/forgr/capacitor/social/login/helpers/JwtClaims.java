@@ -0,0 +1,66 @@
+package ee.forgr.capacitor.social.login.helpers;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The registered claims the plugin uses, read from an id token payload.
+ * Absent string claims are null.
+ */
+public final class JwtClaims {
+
+  final String subject;
+  final String email;
+  final String issuer;
+  final String nonce;
+  final List<String> audience;
+  /** Seconds since epoch, 0 when absent. */
+  final long expiresAt;
+  final long issuedAt;
+
+  JwtClaims(
+    String subject,
+    String email,
+    String issuer,
+    String nonce,
+    List<String> audience,
+    long expiresAt,
+    long issuedAt
+  ) {
+    this.subject = subject;
+    this.email = email;
+    this.issuer = issuer;
+    this.nonce = nonce;
+    this.audience = Collections.unmodifiableList(audience);
+    this.expiresAt = expiresAt;
+    this.issuedAt = issuedAt;
+  }
+
+  public String getSubject() {
+    return subject;
+  }
+
+  public String getEmail() {
+    return email;
+  }
+
+  public String getIssuer() {
+    return issuer;
+  }
+
+  public String getNonce() {
+    return nonce;
+  }
+
+  public List<String> getAudience() {
+    return audience;
+  }
+
+  public long getExpiresAt() {
+    return expiresAt;
+  }
+
+  public long getIssuedAt() {
+    return issuedAt;
+  }
+}
@@ -0,0 +1,33 @@
+package ee.forgr.capacitor.social.login.helpers;
+
+import java.nio.charset.StandardCharsets;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+public class JwtHelper {
+
+  /** Decode the header segment of a JWT (alg, kid, ...). */
+  public static JSONObject decodeHeader(String jwt) throws JSONException {
+    int[] dots = findDots(jwt);
+    return decodeSegment(jwt, 0, dots[0]);
+  }
+
+  private static int[] findDots(String jwt) throws JSONException {
+    int first = jwt.indexOf('.');
+    int second = first < 0 ? -1 : jwt.indexOf('.', first + 1);
+    if (second < 0 || jwt.indexOf('.', second + 1) >= 0) {
+      throw new JSONException("Not a JWT");
+    }
+    return new int[] { first, second };
+  }
+
+  private static JSONObject decodeSegment(String jwt, int start, int end)
+    throws JSONException {
+    try {
+      byte[] segment = Base64Url.decode(jwt, start, end);
+      return new JSONObject(new String(segment, StandardCharsets.UTF_8));
+    } catch (IllegalArgumentException e) {
+      throw new JSONException("Invalid JWT segment: " + e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,74 @@
+package ee.forgr.capacitor.social.login.helpers;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free latency histogram with power of two microsecond buckets.
+ * Recording only touches preallocated atomics, percentiles are reported as
+ * the upper bound of their bucket (so within a factor of two).
+ */
+public class LatencyHistogram {
+
+  private static final int BUCKETS = 32;
+
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong sumMicros = new AtomicLong();
+  private final AtomicLong maxMicros = new AtomicLong();
+
+  public void record(long durationNanos) {
+    long micros = Math.max(0, durationNanos / 1000);
+    int bucket = Math.min(
+      BUCKETS - 1,
+      64 - Long.numberOfLeadingZeros(micros)
+    );
+    buckets.incrementAndGet(bucket);
+    count.incrementAndGet();
+    sumMicros.addAndGet(micros);
+    long max = maxMicros.get();
+    while (micros > max && !maxMicros.compareAndSet(max, micros)) {
+      max = maxMicros.get();
+    }
+  }
+
+  public long getCount() {
+    return count.get();
+  }
+
+  public double getMeanMs() {
+    long n = count.get();
+    return n == 0 ? 0 : sumMicros.get() / (double) n / 1000.0;
+  }
+
+  public double getMaxMs() {
+    return maxMicros.get() / 1000.0;
+  }
+
+  /** @param percentile between 0 and 100 */
+  public double getPercentileMs(double percentile) {
+    long n = count.get();
+    if (n == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(n * percentile / 100.0));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += buckets.get(i);
+      if (seen >= rank) {
+        long upperMicros = i == 0 ? 0 : 1L << i;
+        return Math.min(upperMicros, maxMicros.get()) / 1000.0;
+      }
+    }
+    return getMaxMs();
+  }
+
+  public void reset() {
+    for (int i = 0; i < BUCKETS; i++) {
+      buckets.set(i, 0);
+    }
+    count.set(0);
+    sumMicros.set(0);
+    maxMicros.set(0);
+  }
+}
@@ -0,0 +1,19 @@
+package ee.forgr.capacitor.social.login.helpers;
+
+/**
+ * Logging for the helpers that have no Android dependency. The plugin passes
+ * one writing to {@code android.util.Log}, JVM tests pass {@link #NONE}.
+ */
+public interface LogSink {
+  LogSink NONE = new LogSink() {
+    @Override
+    public void warn(String message, Throwable error) {}
+
+    @Override
+    public void error(String message, Throwable error) {}
+  };
+
+  void warn(String message, Throwable error);
+
+  void error(String message, Throwable error);
+}
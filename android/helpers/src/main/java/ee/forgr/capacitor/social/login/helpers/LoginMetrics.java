@@ -0,0 +1,146 @@
+package ee.forgr.capacitor.social.login.helpers;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per provider, per phase login latency. Each phase records the time since
+ * the previous phase of the same login, so a slow phase stands out directly.
+ */
+public class LoginMetrics {
+
+  public enum Phase {
+    UI_LAUNCHED("uiLaunched"),
+    CREDENTIAL_RETURNED("credentialReturned"),
+    TOKEN_EXCHANGED("tokenExchanged"),
+    PROFILE_FETCHED("profileFetched"),
+    RESOLVED("resolved");
+
+    private final String key;
+
+    Phase(String key) {
+      this.key = key;
+    }
+
+    public String getKey() {
+      return key;
+    }
+  }
+
+  private final ConcurrentMap<String, Recorder> recorders =
+    new ConcurrentHashMap<>();
+
+  public Recorder forProvider(String provider) {
+    Recorder recorder = recorders.get(provider);
+    if (recorder == null) {
+      Recorder created = new Recorder();
+      recorder = recorders.putIfAbsent(provider, created);
+      if (recorder == null) {
+        recorder = created;
+      }
+    }
+    return recorder;
+  }
+
+  public Map<String, Recorder> getRecorders() {
+    return recorders;
+  }
+
+  public void reset() {
+    for (Recorder recorder : recorders.values()) {
+      recorder.reset();
+    }
+  }
+
+  /**
+   * Timers of one provider. A provider runs one interactive login at a time,
+   * a new start() abandons the previous one.
+   */
+  public static class Recorder {
+
+    private static final Phase[] PHASES = Phase.values();
+
+    private final LatencyHistogram[] phases =
+      new LatencyHistogram[PHASES.length];
+    private final LatencyHistogram total = new LatencyHistogram();
+    private final AtomicLong failures = new AtomicLong();
+    private final ConcurrentMap<String, AtomicLong> paths =
+      new ConcurrentHashMap<>();
+    private volatile long startNanos;
+    private volatile long lastMarkNanos;
+
+    Recorder() {
+      for (int i = 0; i < phases.length; i++) {
+        phases[i] = new LatencyHistogram();
+      }
+    }
+
+    public void start() {
+      long now = System.nanoTime();
+      startNanos = now;
+      lastMarkNanos = now;
+    }
+
+    /** Ignored when no login is in progress. */
+    public void mark(Phase phase) {
+      long start = startNanos;
+      if (start == 0) {
+        return;
+      }
+      long now = System.nanoTime();
+      phases[phase.ordinal()].record(now - lastMarkNanos);
+      lastMarkNanos = now;
+      if (phase == Phase.RESOLVED) {
+        total.record(now - start);
+        startNanos = 0;
+      }
+    }
+
+    public void fail() {
+      if (startNanos != 0) {
+        failures.incrementAndGet();
+        startNanos = 0;
+      }
+    }
+
+    /** Count which variant of the flow a login went through. */
+    public void recordPath(String path) {
+      AtomicLong count = paths.get(path);
+      if (count == null) {
+        AtomicLong created = new AtomicLong();
+        count = paths.putIfAbsent(path, created);
+        if (count == null) {
+          count = created;
+        }
+      }
+      count.incrementAndGet();
+    }
+
+    public LatencyHistogram getPhase(Phase phase) {
+      return phases[phase.ordinal()];
+    }
+
+    public LatencyHistogram getTotal() {
+      return total;
+    }
+
+    public long getFailures() {
+      return failures.get();
+    }
+
+    public Map<String, AtomicLong> getPaths() {
+      return paths;
+    }
+
+    void reset() {
+      for (LatencyHistogram histogram : phases) {
+        histogram.reset();
+      }
+      total.reset();
+      failures.set(0);
+      paths.clear();
+    }
+  }
+}
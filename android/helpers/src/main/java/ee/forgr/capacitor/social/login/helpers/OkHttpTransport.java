@@ -0,0 +1,93 @@
+package ee.forgr.capacitor.social.login.helpers;
+
+import androidx.annotation.NonNull;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import okhttp3.Call;
+import okhttp3.ConnectionPool;
+import okhttp3.EventListener;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+
+/**
+ * {@link HttpTransport} backed by a single shared {@link OkHttpClient}, so the
+ * connection pool, TLS sessions and dispatcher threads survive across logins.
+ */
+public class OkHttpTransport implements HttpTransport {
+
+  private static final int MAX_IDLE_CONNECTIONS = 4;
+  private static final long KEEP_ALIVE_MINUTES = 5;
+  private static final long CONNECT_TIMEOUT_SECONDS = 10;
+  private static final long READ_TIMEOUT_SECONDS = 15;
+  private static final long WRITE_TIMEOUT_SECONDS = 15;
+  private static final long CALL_TIMEOUT_SECONDS = 30;
+
+  private final OkHttpClient client;
+  private final AtomicLong callsStarted = new AtomicLong();
+  private final AtomicLong connectionsOpened = new AtomicLong();
+
+  public OkHttpTransport() {
+    this(new OkHttpClient.Builder());
+  }
+
+  public OkHttpTransport(OkHttpClient.Builder builder) {
+    this.client = builder
+      .connectionPool(
+        new ConnectionPool(
+          MAX_IDLE_CONNECTIONS,
+          KEEP_ALIVE_MINUTES,
+          TimeUnit.MINUTES
+        )
+      )
+      .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+      .connectTimeout(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+      .readTimeout(READ_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+      .writeTimeout(WRITE_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+      .callTimeout(CALL_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+      .eventListener(
+        new EventListener() {
+          @Override
+          public void callStart(@NonNull Call call) {
+            callsStarted.incrementAndGet();
+          }
+
+          @Override
+          public void connectStart(
+            @NonNull Call call,
+            @NonNull InetSocketAddress inetSocketAddress,
+            @NonNull Proxy proxy
+          ) {
+            connectionsOpened.incrementAndGet();
+          }
+        }
+      )
+      .build();
+  }
+
+  @Override
+  public Call newCall(Request request) {
+    return client.newCall(request);
+  }
+
+  @Override
+  public void shutdown() {
+    client.dispatcher().executorService().shutdown();
+    client.connectionPool().evictAll();
+  }
+
+  public long getCallsStarted() {
+    return callsStarted.get();
+  }
+
+  public long getConnectionsOpened() {
+    return connectionsOpened.get();
+  }
+
+  public int getPooledConnectionCount() {
+    return client.connectionPool().connectionCount();
+  }
+}
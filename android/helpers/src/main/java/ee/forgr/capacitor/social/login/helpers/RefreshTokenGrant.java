@@ -0,0 +1,146 @@
+package ee.forgr.capacitor.social.login.helpers;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.FormBody;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * OAuth {@code refresh_token} grant against a token endpoint. Concurrent
+ * refreshes share one request, and a returned id token is verified before the
+ * new tokens are saved or handed out.
+ */
+public class RefreshTokenGrant {
+
+  public interface Listener {
+    void onRefreshed(TokenResponseParser.TokenResponse tokens);
+    void onFailure(String message, @Nullable Exception e);
+  }
+
+  /** Called once per successful refresh, before the listeners. */
+  public interface Store {
+    /**
+     * @param claims claims of the new id token, null when none was returned
+     * @throws Exception to fail the refresh instead
+     */
+    void save(
+      TokenResponseParser.TokenResponse tokens,
+      @Nullable JwtClaims claims,
+      String clientSecret
+    ) throws Exception;
+  }
+
+  private final ResilientHttpClient client;
+  private final String tokenUrl;
+  private final String clientId;
+  private final IdTokenVerifier verifier;
+  private final Store store;
+  private final Object lock = new Object();
+  private final List<Listener> waiters = new ArrayList<>();
+
+  public RefreshTokenGrant(
+    ResilientHttpClient client,
+    String tokenUrl,
+    String clientId,
+    IdTokenVerifier verifier,
+    Store store
+  ) {
+    this.client = client;
+    this.tokenUrl = tokenUrl;
+    this.clientId = clientId;
+    this.verifier = verifier;
+    this.store = store;
+  }
+
+  /**
+   * Joins the refresh in flight if there is one, its refresh token and
+   * client secret are used.
+   */
+  public void refresh(
+    @Nullable String refreshToken,
+    @Nullable String clientSecret,
+    Listener listener
+  ) {
+    synchronized (lock) {
+      waiters.add(listener);
+      if (waiters.size() > 1) {
+        return;
+      }
+    }
+    if (refreshToken == null || refreshToken.isEmpty()) {
+      complete(null, "Not logged in; Cannot refresh", null);
+      return;
+    }
+    if (clientSecret == null || clientSecret.isEmpty()) {
+      complete(null, "No client secret available to refresh", null);
+      return;
+    }
+
+    Request request = new Request.Builder()
+      .url(tokenUrl)
+      .post(
+        new FormBody.Builder()
+          .add("grant_type", "refresh_token")
+          .add("refresh_token", refreshToken)
+          .add("client_id", clientId)
+          .add("client_secret", clientSecret)
+          .build()
+      )
+      .build();
+    client.enqueue(
+      request,
+      new Callback() {
+        @Override
+        public void onFailure(@NonNull Call call, @NonNull IOException e) {
+          complete(null, "Cannot refresh access_token", e);
+        }
+
+        @Override
+        public void onResponse(@NonNull Call call, @NonNull Response response) {
+          try {
+            TokenResponseParser.TokenResponse tokens =
+              TokenResponseParser.parse(response);
+            // Only sent again when the provider rotates it
+            if (tokens.refreshToken == null) {
+              tokens.refreshToken = refreshToken;
+            }
+            JwtClaims claims = tokens.idToken != null
+              ? verifier.verify(tokens.idToken, null)
+              : null;
+            store.save(tokens, claims, clientSecret);
+            complete(tokens, null, null);
+          } catch (Exception e) {
+            complete(null, "Cannot refresh access_token", e);
+          } finally {
+            response.close();
+          }
+        }
+      }
+    );
+  }
+
+  private void complete(
+    TokenResponseParser.TokenResponse tokens,
+    String errorMessage,
+    Exception error
+  ) {
+    List<Listener> toNotify;
+    synchronized (lock) {
+      toNotify = new ArrayList<>(waiters);
+      waiters.clear();
+    }
+    for (Listener waiter : toNotify) {
+      if (tokens != null) {
+        waiter.onRefreshed(tokens);
+      } else {
+        waiter.onFailure(errorMessage, error);
+      }
+    }
+  }
+}
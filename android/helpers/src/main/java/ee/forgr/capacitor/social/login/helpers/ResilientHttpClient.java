@@ -0,0 +1,240 @@
+package ee.forgr.capacitor.social.login.helpers;
+
+import androidx.annotation.NonNull;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Sends requests through an {@link HttpTransport} with bounded retries.
+ * <p>
+ * Network errors, 5xx and 429 responses are retried with jittered exponential
+ * backoff, as long as attempts remain and the retry can start before the
+ * overall deadline. Each attempt gets its own timeout, capped by the time
+ * left. Every attempt is reported to a {@link CircuitBreaker}, and while it is
+ * open requests fail at once without touching the network.
+ * <p>
+ * Requests that must not reach the server twice, such as the exchange of a
+ * single-use authorization code, are sent with
+ * {@link #enqueueNonIdempotent} and only retried when they could not be sent.
+ * <p>
+ * The callback gets the last response, or the last error, exactly once.
+ */
+public class ResilientHttpClient {
+
+  private final HttpTransport transport;
+  private final ScheduledExecutorService scheduler;
+  private final CircuitBreaker breaker;
+  private final int maxAttempts;
+  private final long initialBackoffMs;
+  private final long maxBackoffMs;
+  private final long attemptTimeoutMs;
+  private final long deadlineMs;
+
+  private final AtomicLong requestCount = new AtomicLong();
+  private final AtomicLong attemptCount = new AtomicLong();
+  private final AtomicLong retryCount = new AtomicLong();
+  private final AtomicLong failureCount = new AtomicLong();
+  private final AtomicLong shortCircuitCount = new AtomicLong();
+
+  public ResilientHttpClient(
+    HttpTransport transport,
+    ScheduledExecutorService scheduler,
+    CircuitBreaker breaker,
+    int maxAttempts,
+    long initialBackoffMs,
+    long maxBackoffMs,
+    long attemptTimeoutMs,
+    long deadlineMs
+  ) {
+    this.transport = transport;
+    this.scheduler = scheduler;
+    this.breaker = breaker;
+    this.maxAttempts = maxAttempts;
+    this.initialBackoffMs = initialBackoffMs;
+    this.maxBackoffMs = maxBackoffMs;
+    this.attemptTimeoutMs = attemptTimeoutMs;
+    this.deadlineMs = deadlineMs;
+  }
+
+  public void enqueue(Request request, Callback callback) {
+    requestCount.incrementAndGet();
+    new Execution(request, true, callback).attempt();
+  }
+
+  /**
+   * Retried only after DNS or connection failures, never after a timeout or
+   * a response, as the server may already have acted on the request.
+   */
+  public void enqueueNonIdempotent(Request request, Callback callback) {
+    requestCount.incrementAndGet();
+    new Execution(request, false, callback).attempt();
+  }
+
+  public CircuitBreaker getCircuitBreaker() {
+    return breaker;
+  }
+
+  public long getRequestCount() {
+    return requestCount.get();
+  }
+
+  public long getAttemptCount() {
+    return attemptCount.get();
+  }
+
+  public long getRetryCount() {
+    return retryCount.get();
+  }
+
+  /** Requests that ended with an error or a retryable status. */
+  public long getFailureCount() {
+    return failureCount.get();
+  }
+
+  /** Requests refused because the circuit was open. */
+  public long getShortCircuitCount() {
+    return shortCircuitCount.get();
+  }
+
+  static boolean isRetryable(int code) {
+    return code == 429 || code >= 500;
+  }
+
+  /** Whether the request failed before any byte of it was sent. */
+  static boolean isUnsent(IOException e) {
+    return (
+      e instanceof UnknownHostException ||
+      e instanceof ConnectException ||
+      e instanceof NoRouteToHostException ||
+      // Connect timeout of the socket, a read timeout has another message
+      (e instanceof SocketTimeoutException &&
+        "connect timed out".equals(e.getMessage()))
+    );
+  }
+
+  private class Execution implements Callback {
+
+    private final Request request;
+    private final boolean idempotent;
+    private final Callback callback;
+    private final long deadlineAt;
+    private int attempts;
+
+    Execution(Request request, boolean idempotent, Callback callback) {
+      this.request = request;
+      this.idempotent = idempotent;
+      this.callback = callback;
+      this.deadlineAt = System.nanoTime() + deadlineMs * 1_000_000;
+    }
+
+    void attempt() {
+      Call call = transport.newCall(request);
+      if (!breaker.allowRequest()) {
+        shortCircuitCount.incrementAndGet();
+        failureCount.incrementAndGet();
+        callback.onFailure(
+          call,
+          new IOException(
+            "Circuit open for " + request.url().host() + ", not sending request"
+          )
+        );
+        return;
+      }
+      attempts++;
+      attemptCount.incrementAndGet();
+      call
+        .timeout()
+        .timeout(
+          Math.max(1, Math.min(attemptTimeoutMs, remainingMs())),
+          TimeUnit.MILLISECONDS
+        );
+      call.enqueue(this);
+    }
+
+    @Override
+    public void onFailure(@NonNull Call call, @NonNull IOException e) {
+      breaker.recordFailure();
+      long delay = backoffMs();
+      if ((idempotent || isUnsent(e)) && canRetry(delay)) {
+        retry(delay, call, e);
+        return;
+      }
+      failureCount.incrementAndGet();
+      callback.onFailure(call, e);
+    }
+
+    @Override
+    public void onResponse(@NonNull Call call, @NonNull Response response)
+      throws IOException {
+      if (!isRetryable(response.code())) {
+        breaker.recordSuccess();
+        callback.onResponse(call, response);
+        return;
+      }
+      breaker.recordFailure();
+      long delay = Math.max(backoffMs(), retryAfterMs(response));
+      if (idempotent && canRetry(delay)) {
+        response.close();
+        retry(
+          delay,
+          call,
+          new IOException("Unexpected code " + response.code())
+        );
+        return;
+      }
+      failureCount.incrementAndGet();
+      callback.onResponse(call, response);
+    }
+
+    private void retry(long delayMs, Call call, IOException cause) {
+      retryCount.incrementAndGet();
+      try {
+        scheduler.schedule(this::attempt, delayMs, TimeUnit.MILLISECONDS);
+      } catch (RejectedExecutionException e) {
+        failureCount.incrementAndGet();
+        callback.onFailure(call, cause);
+      }
+    }
+
+    private boolean canRetry(long delayMs) {
+      return attempts < maxAttempts && delayMs < remainingMs();
+    }
+
+    private long remainingMs() {
+      return (deadlineAt - System.nanoTime()) / 1_000_000;
+    }
+
+    private long backoffMs() {
+      long backoff = Math.min(
+        maxBackoffMs,
+        initialBackoffMs << Math.min(attempts - 1, 20)
+      );
+      long half = backoff / 2;
+      return half + ThreadLocalRandom.current().nextLong(half + 1);
+    }
+
+    private long retryAfterMs(Response response) {
+      String value = response.header("Retry-After");
+      if (value == null) {
+        return 0;
+      }
+      try {
+        return Math.max(0, Long.parseLong(value.trim()) * 1000);
+      } catch (NumberFormatException e) {
+        return 0;
+      }
+    }
+  }
+}
@@ -0,0 +1,77 @@
+package ee.forgr.capacitor.social.login.helpers;
+
+import java.io.IOException;
+import java.io.Reader;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Streaming reader for OAuth token endpoint responses. Only the fields the
+ * plugin uses are materialized, everything else is skipped without building
+ * a JSON tree or buffering the body.
+ */
+public final class TokenResponseParser {
+
+  public static final class TokenResponse {
+
+    public String accessToken;
+    public String refreshToken;
+    public String idToken;
+    public String tokenType;
+    /** Seconds, -1 when absent. */
+    public long expiresIn = -1;
+  }
+
+  private TokenResponseParser() {}
+
+  /**
+   * Tokens of a successful response, which must have an access token.
+   * Error bodies are small and read whole for the message.
+   */
+  public static TokenResponse parse(Response response) throws IOException {
+    ResponseBody body = response.body();
+    if (body == null) {
+      throw new IOException("Empty token response");
+    }
+    if (!response.isSuccessful()) {
+      throw new IOException(
+        "Unexpected code " + response.code() + ": " + body.string()
+      );
+    }
+    TokenResponse tokens = parse(body.charStream());
+    if (tokens.accessToken == null) {
+      throw new IOException("Token response has no access_token");
+    }
+    return tokens;
+  }
+
+  /** Missing fields are left null (or -1 for expires_in). */
+  public static TokenResponse parse(Reader reader) throws IOException {
+    JsonStreamReader json = new JsonStreamReader(reader);
+    TokenResponse response = new TokenResponse();
+    json.beginObject();
+    String name;
+    while ((name = json.nextName()) != null) {
+      switch (name) {
+        case "access_token":
+          response.accessToken = json.nextNullableString();
+          break;
+        case "refresh_token":
+          response.refreshToken = json.nextNullableString();
+          break;
+        case "id_token":
+          response.idToken = json.nextNullableString();
+          break;
+        case "token_type":
+          response.tokenType = json.nextNullableString();
+          break;
+        case "expires_in":
+          response.expiresIn = json.nextLong(-1);
+          break;
+        default:
+          json.skipValue();
+      }
+    }
+    return response;
+  }
+}
@@ -0,0 +1,281 @@
+package ee.forgr.capacitor.social.login.helpers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single persistent store for the tokens of every provider.
+ * <p>
+ * Each provider owns a namespace of string key/values. Everything is kept in
+ * memory once loaded, and writes that happen close together are coalesced
+ * into one atomic, fsynced write of a small versioned binary file.
+ * This class has no Android dependency so it can be tested on the JVM.
+ */
+public class TokenStore {
+
+  static final int MAGIC = 0x534c5453; // "SLTS"
+  static final int VERSION = 1;
+
+  private final File file;
+  private final ScheduledExecutorService scheduler;
+  private final long coalesceDelayMs;
+  private final LogSink log;
+
+  private final Object lock = new Object();
+  // Held from snapshot to rename, so snapshots reach the disk in order
+  private final Object writeLock = new Object();
+  private Map<String, Map<String, String>> namespaces;
+  private boolean dirty;
+  private boolean writeScheduled;
+  private final AtomicLong writeCount = new AtomicLong();
+
+  public TokenStore(
+    File file,
+    ScheduledExecutorService scheduler,
+    long coalesceDelayMs,
+    LogSink log
+  ) {
+    this.file = file;
+    this.scheduler = scheduler;
+    this.coalesceDelayMs = coalesceDelayMs;
+    this.log = log;
+  }
+
+  /** Values of the namespace, empty when nothing is stored. */
+  public Map<String, String> get(String namespace) {
+    synchronized (lock) {
+      Map<String, String> values = loaded().get(namespace);
+      if (values == null) {
+        return Collections.emptyMap();
+      }
+      return Collections.unmodifiableMap(new HashMap<>(values));
+    }
+  }
+
+  /** Read the file now, so that later calls do not wait on the disk. */
+  public void preload() {
+    synchronized (lock) {
+      loaded();
+    }
+  }
+
+  public boolean contains(String namespace) {
+    synchronized (lock) {
+      return loaded().containsKey(namespace);
+    }
+  }
+
+  /** Replace the whole namespace. Null values are dropped. */
+  public void put(String namespace, Map<String, String> values) {
+    Map<String, String> copy = new LinkedHashMap<>();
+    for (Map.Entry<String, String> entry : values.entrySet()) {
+      if (entry.getValue() != null) {
+        copy.put(entry.getKey(), entry.getValue());
+      }
+    }
+    boolean scheduled;
+    synchronized (lock) {
+      loaded().put(namespace, copy);
+      scheduled = markDirty();
+    }
+    if (!scheduled) {
+      flush();
+    }
+  }
+
+  public void remove(String namespace) {
+    boolean scheduled = true;
+    synchronized (lock) {
+      if (loaded().remove(namespace) != null) {
+        scheduled = markDirty();
+      }
+    }
+    if (!scheduled) {
+      flush();
+    }
+  }
+
+  /**
+   * Write pending changes now, on the calling thread.
+   *
+   * @return false when the changes could not be written
+   */
+  public boolean flush() {
+    synchronized (writeLock) {
+      Map<String, Map<String, String>> snapshot;
+      synchronized (lock) {
+        if (!dirty) {
+          return true;
+        }
+        snapshot = copyOf(namespaces);
+        dirty = false;
+      }
+      try {
+        write(snapshot);
+        return true;
+      } catch (IOException e) {
+        log.error("Cannot write token store", e);
+        synchronized (lock) {
+          dirty = true;
+        }
+        return false;
+      }
+    }
+  }
+
+  /** Number of writes to disk so far. */
+  public long getWriteCount() {
+    return writeCount.get();
+  }
+
+  private Map<String, Map<String, String>> loaded() {
+    if (namespaces == null) {
+      namespaces = read();
+    }
+    return namespaces;
+  }
+
+  /**
+   * @return false when the write could not be scheduled because the scheduler
+   * was shut down, the caller then flushes once it released the lock
+   */
+  private boolean markDirty() {
+    dirty = true;
+    if (writeScheduled) {
+      return true;
+    }
+    writeScheduled = true;
+    try {
+      scheduler.schedule(
+        () -> {
+          synchronized (lock) {
+            writeScheduled = false;
+          }
+          flush();
+        },
+        coalesceDelayMs,
+        TimeUnit.MILLISECONDS
+      );
+      return true;
+    } catch (RejectedExecutionException e) {
+      writeScheduled = false;
+      return false;
+    }
+  }
+
+  private Map<String, Map<String, String>> read() {
+    if (!file.exists()) {
+      return new HashMap<>();
+    }
+    try (InputStream in = new FileInputStream(file)) {
+      return decode(in);
+    } catch (IOException e) {
+      log.warn("Discarding unreadable token store", e);
+      return new HashMap<>();
+    }
+  }
+
+  private void write(Map<String, Map<String, String>> snapshot)
+    throws IOException {
+    byte[] bytes = encode(snapshot);
+    File parent = file.getParentFile();
+    if (parent != null && !parent.exists() && !parent.mkdirs()) {
+      throw new IOException("Cannot create " + parent);
+    }
+    File tmp = new File(file.getPath() + ".tmp");
+    try (FileOutputStream out = new FileOutputStream(tmp)) {
+      out.write(bytes);
+      out.getFD().sync();
+    }
+    if (!tmp.renameTo(file)) {
+      throw new IOException("Cannot replace " + file);
+    }
+    writeCount.incrementAndGet();
+  }
+
+  static byte[] encode(Map<String, Map<String, String>> namespaces)
+    throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(MAGIC);
+    out.writeByte(VERSION);
+    out.writeInt(namespaces.size());
+    for (String name : namespaces.keySet()) {
+      Map<String, String> values = namespaces.get(name);
+      writeString(out, name);
+      out.writeInt(values.size());
+      for (Map.Entry<String, String> entry : values.entrySet()) {
+        writeString(out, entry.getKey());
+        writeString(out, entry.getValue());
+      }
+    }
+    out.flush();
+    return bytes.toByteArray();
+  }
+
+  static Map<String, Map<String, String>> decode(InputStream input)
+    throws IOException {
+    DataInputStream in = new DataInputStream(input);
+    if (in.readInt() != MAGIC) {
+      throw new IOException("Not a token store");
+    }
+    int version = in.readUnsignedByte();
+    if (version != VERSION) {
+      throw new IOException("Unsupported token store version " + version);
+    }
+    int namespaceCount = in.readInt();
+    Map<String, Map<String, String>> namespaces = new HashMap<>();
+    for (int i = 0; i < namespaceCount; i++) {
+      String name = readString(in);
+      int entryCount = in.readInt();
+      Map<String, String> values = new LinkedHashMap<>();
+      for (int j = 0; j < entryCount; j++) {
+        values.put(readString(in), readString(in));
+      }
+      namespaces.put(name, values);
+    }
+    return namespaces;
+  }
+
+  private static void writeString(DataOutputStream out, String value)
+    throws IOException {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    int length = in.readInt();
+    if (length < 0) {
+      throw new IOException("Corrupted token store");
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static Map<String, Map<String, String>> copyOf(
+    Map<String, Map<String, String>> namespaces
+  ) {
+    Map<String, Map<String, String>> copy = new HashMap<>();
+    for (Map.Entry<String, Map<String, String>> entry : namespaces.entrySet()) {
+      copy.put(entry.getKey(), new LinkedHashMap<>(entry.getValue()));
+    }
+    return copy;
+  }
+}
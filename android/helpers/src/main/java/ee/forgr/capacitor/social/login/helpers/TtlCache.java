@@ -0,0 +1,71 @@
+package ee.forgr.capacitor.social.login.helpers;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Small thread-safe cache where each entry expires at its own deadline.
+ * Hit and miss counts are kept so callers can check the cache is useful.
+ */
+public class TtlCache<K, V> {
+
+  private static final class Entry<V> {
+
+    final V value;
+    final long expiresAt;
+
+    Entry(V value, long expiresAt) {
+      this.value = value;
+      this.expiresAt = expiresAt;
+    }
+  }
+
+  private final ConcurrentHashMap<K, Entry<V>> entries =
+    new ConcurrentHashMap<>();
+  private final long defaultTtlMillis;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  public TtlCache(long defaultTtlMillis) {
+    this.defaultTtlMillis = defaultTtlMillis;
+  }
+
+  public V get(K key) {
+    Entry<V> entry = entries.get(key);
+    if (entry == null) {
+      misses.incrementAndGet();
+      return null;
+    }
+    if (System.currentTimeMillis() >= entry.expiresAt) {
+      entries.remove(key, entry);
+      misses.incrementAndGet();
+      return null;
+    }
+    hits.incrementAndGet();
+    return entry.value;
+  }
+
+  public void put(K key, V value) {
+    putUntil(key, value, System.currentTimeMillis() + defaultTtlMillis);
+  }
+
+  public void putUntil(K key, V value, long expiresAt) {
+    entries.put(key, new Entry<>(value, expiresAt));
+  }
+
+  public void clear() {
+    entries.clear();
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+}
@@ -0,0 +1,287 @@
+package ee.forgr.capacitor.social.login.helpers;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class IdTokenVerifierTest {
+
+  static final String JWKS_URL = "https://idp.test/keys";
+  static final String ISSUER = "https://idp.test";
+  static final String AUDIENCE = "app.capgo.test";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private ScheduledExecutorService scheduler;
+  private File file;
+  private KeyPair keyPair;
+  private FakeJwks jwks;
+
+  /** Local stand-in for the provider JWKS endpoint. */
+  private static class FakeJwks implements JwksKeyStore.Fetcher {
+
+    String document;
+    int fetches;
+    boolean offline;
+
+    @Override
+    public String fetch(String url) throws IOException {
+      if (offline) {
+        throw new IOException("offline");
+      }
+      fetches++;
+      return document;
+    }
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    scheduler = Executors.newSingleThreadScheduledExecutor();
+    file = new File(folder.getRoot(), "tokens.bin");
+    keyPair = newKeyPair();
+    jwks = new FakeJwks();
+    jwks.document = jwksOf("key-1", keyPair);
+  }
+
+  @After
+  public void tearDown() {
+    scheduler.shutdownNow();
+  }
+
+  @Test
+  public void validTokenIsVerified() throws Exception {
+    IdTokenVerifier verifier = verifier(newKeyStore());
+    String token = sign("key-1", keyPair, claims());
+    assertEquals("user-1", verifier.verify(token, "n1").getSubject());
+  }
+
+  @Test
+  public void keysAreFetchedOnceAndPersisted() throws Exception {
+    TokenStore store = new TokenStore(file, scheduler, 10_000, LogSink.NONE);
+    JwksKeyStore keyStore = new JwksKeyStore(
+      jwks,
+      store,
+      60_000,
+      60_000,
+      LogSink.NONE
+    );
+    verifier(keyStore).verify(sign("key-1", keyPair, claims()), null);
+    verifier(keyStore).verify(sign("key-1", keyPair, claims()), null);
+    assertEquals(1, jwks.fetches);
+    store.flush();
+
+    jwks.offline = true;
+    JwksKeyStore restored = new JwksKeyStore(
+      jwks,
+      new TokenStore(file, scheduler, 10_000, LogSink.NONE),
+      60_000,
+      60_000,
+      LogSink.NONE
+    );
+    verifier(restored).verify(sign("key-1", keyPair, claims()), null);
+    assertEquals(0, restored.getFetchCount());
+  }
+
+  @Test
+  public void unknownKidTriggersARefetch() throws Exception {
+    JwksKeyStore keyStore = new JwksKeyStore(
+      jwks,
+      new TokenStore(file, scheduler, 10_000, LogSink.NONE),
+      60_000,
+      0,
+      LogSink.NONE
+    );
+    verifier(keyStore).verify(sign("key-1", keyPair, claims()), null);
+
+    KeyPair rotated = newKeyPair();
+    jwks.document = jwksOf("key-2", rotated);
+    verifier(keyStore).verify(sign("key-2", rotated, claims()), null);
+    assertEquals(2, jwks.fetches);
+  }
+
+  @Test
+  public void concurrentLookupsShareOneFetch() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger fetches = new AtomicInteger();
+    JwksKeyStore keyStore = new JwksKeyStore(
+      url -> {
+        fetches.incrementAndGet();
+        try {
+          release.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          throw new IOException(e);
+        }
+        return jwks.document;
+      },
+      new TokenStore(file, scheduler, 10_000, LogSink.NONE),
+      60_000,
+      60_000,
+      LogSink.NONE
+    );
+    ExecutorService callers = Executors.newFixedThreadPool(4);
+    try {
+      Future<?>[] lookups = new Future<?>[4];
+      for (int i = 0; i < lookups.length; i++) {
+        lookups[i] = callers.submit(() -> keyStore.getKey(JWKS_URL, "key-1"));
+      }
+      Thread.sleep(100);
+      // The lock is not held while the fetch is blocked
+      assertEquals(1, keyStore.getFetchCount());
+      release.countDown();
+      for (Future<?> lookup : lookups) {
+        assertNotNull(lookup.get(10, TimeUnit.SECONDS));
+      }
+    } finally {
+      callers.shutdownNow();
+    }
+    assertEquals(1, fetches.get());
+  }
+
+  @Test
+  public void staleKeysAreServedWhenTheRefetchFails() throws Exception {
+    JwksKeyStore keyStore = new JwksKeyStore(
+      jwks,
+      new TokenStore(file, scheduler, 10_000, LogSink.NONE),
+      0,
+      0,
+      LogSink.NONE
+    );
+    verifier(keyStore).verify(sign("key-1", keyPair, claims()), null);
+
+    jwks.offline = true;
+    verifier(keyStore).verify(sign("key-1", keyPair, claims()), null);
+    assertEquals(2, keyStore.getFetchCount());
+  }
+
+  @Test
+  public void tamperedSignatureIsRejected() throws Exception {
+    KeyPair other = newKeyPair();
+    assertRejected(sign("key-1", other, claims()), null);
+  }
+
+  @Test
+  public void wrongAudienceIsRejected() throws Exception {
+    assertRejected(sign("key-1", keyPair, claims().put("aud", "other")), null);
+  }
+
+  @Test
+  public void wrongIssuerIsRejected() throws Exception {
+    assertRejected(sign("key-1", keyPair, claims().put("iss", "evil")), null);
+  }
+
+  @Test
+  public void expiredTokenIsRejected() throws Exception {
+    long past = System.currentTimeMillis() / 1000 - 3600;
+    assertRejected(sign("key-1", keyPair, claims().put("exp", past)), null);
+  }
+
+  @Test
+  public void nonceMismatchIsRejected() throws Exception {
+    assertRejected(sign("key-1", keyPair, claims()), "other-nonce");
+  }
+
+  private void assertRejected(String token, String nonce) throws Exception {
+    try {
+      verifier(newKeyStore()).verify(token, nonce);
+      fail("Token should have been rejected");
+    } catch (IdTokenVerifier.VerificationException expected) {
+      // expected
+    }
+  }
+
+  private JwksKeyStore newKeyStore() {
+    return new JwksKeyStore(
+      jwks,
+      new TokenStore(file, scheduler, 10_000, LogSink.NONE),
+      60_000,
+      60_000,
+      LogSink.NONE
+    );
+  }
+
+  private static IdTokenVerifier verifier(JwksKeyStore keyStore) {
+    return new IdTokenVerifier(
+      keyStore,
+      JWKS_URL,
+      Collections.singletonList(ISSUER),
+      AUDIENCE
+    );
+  }
+
+  private static JSONObject claims() throws Exception {
+    return new JSONObject()
+      .put("iss", ISSUER)
+      .put("aud", AUDIENCE)
+      .put("sub", "user-1")
+      .put("nonce", "n1")
+      .put("exp", System.currentTimeMillis() / 1000 + 600);
+  }
+
+  static KeyPair newKeyPair() throws Exception {
+    KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+    generator.initialize(2048);
+    return generator.generateKeyPair();
+  }
+
+  static String jwksOf(String kid, KeyPair keyPair) throws Exception {
+    RSAPublicKey key = (RSAPublicKey) keyPair.getPublic();
+    JSONObject jwk = new JSONObject()
+      .put("kty", "RSA")
+      .put("kid", kid)
+      .put("alg", "RS256")
+      .put("n", encode(unsigned(key.getModulus())))
+      .put("e", encode(unsigned(key.getPublicExponent())));
+    return new JSONObject().put("keys", new JSONArray().put(jwk)).toString();
+  }
+
+  static String sign(String kid, KeyPair keyPair, JSONObject claims)
+    throws Exception {
+    JSONObject header = new JSONObject().put("alg", "RS256").put("kid", kid);
+    String signingInput =
+      encode(header.toString().getBytes(StandardCharsets.UTF_8)) +
+      "." +
+      encode(claims.toString().getBytes(StandardCharsets.UTF_8));
+    Signature signature = Signature.getInstance("SHA256withRSA");
+    signature.initSign(keyPair.getPrivate());
+    signature.update(signingInput.getBytes(StandardCharsets.US_ASCII));
+    return signingInput + "." + encode(signature.sign());
+  }
+
+  private static byte[] unsigned(BigInteger value) {
+    byte[] bytes = value.toByteArray();
+    if (bytes[0] == 0) {
+      byte[] trimmed = new byte[bytes.length - 1];
+      System.arraycopy(bytes, 1, trimmed, 0, trimmed.length);
+      return trimmed;
+    }
+    return bytes;
+  }
+
+  private static String encode(byte[] bytes) {
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+  }
+}
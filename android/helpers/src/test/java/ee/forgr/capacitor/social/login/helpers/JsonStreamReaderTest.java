@@ -0,0 +1,83 @@
+package ee.forgr.capacitor.social.login.helpers;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import org.junit.Test;
+
+public class JsonStreamReaderTest {
+
+  private static JsonStreamReader reader(String json) {
+    return new JsonStreamReader(new StringReader(json));
+  }
+
+  @Test
+  public void readsNestedObjectsAndArrays() throws Exception {
+    JsonStreamReader json = reader(
+      "{\"a\":{\"b\":[1, 2],\"c\":null},\"d\":\"e\\n\"}"
+    );
+    json.beginObject();
+    assertEquals("a", json.nextName());
+    json.beginObject();
+    assertEquals("b", json.nextName());
+    json.beginArray();
+    assertTrue(json.hasNextElement());
+    assertEquals(1, json.nextLong(0));
+    assertTrue(json.hasNextElement());
+    assertEquals(2, json.nextLong(0));
+    assertFalse(json.hasNextElement());
+    assertEquals("c", json.nextName());
+    assertNull(json.nextNullableString());
+    assertNull(json.nextName());
+    assertEquals("d", json.nextName());
+    assertEquals("e\n", json.nextNullableString());
+    assertNull(json.nextName());
+  }
+
+  @Test
+  public void numbersMayBeStringsOrNull() throws Exception {
+    JsonStreamReader json = reader("[\"42\", null, \"x\", -7.5e1]");
+    json.beginArray();
+    assertTrue(json.hasNextElement());
+    assertEquals(42, json.nextLong(-1));
+    assertTrue(json.hasNextElement());
+    assertEquals(-1, json.nextLong(-1));
+    assertTrue(json.hasNextElement());
+    assertEquals(-1, json.nextLong(-1));
+    assertTrue(json.hasNextElement());
+    assertEquals(-7, json.nextLong(-1));
+    assertFalse(json.hasNextElement());
+  }
+
+  @Test(expected = IOException.class)
+  public void truncatedNameFails() throws Exception {
+    JsonStreamReader json = reader("{\"abc");
+    json.beginObject();
+    json.nextName();
+  }
+
+  @Test(expected = IOException.class)
+  public void truncatedEscapeFails() throws Exception {
+    JsonStreamReader json = reader("[\"\\u12");
+    json.beginArray();
+    json.hasNextElement();
+    json.nextNullableString();
+  }
+
+  @Test(expected = IOException.class)
+  public void missingValueFails() throws Exception {
+    JsonStreamReader json = reader("{\"a\":");
+    json.beginObject();
+    json.nextName();
+    json.skipValue();
+  }
+
+  @Test(expected = IOException.class)
+  public void excessiveNestingFails() throws Exception {
+    JsonStreamReader json = reader(new String(new char[40]).replace('\0', '['));
+    for (int i = 0; i < 40; i++) {
+      json.beginArray();
+    }
+  }
+}
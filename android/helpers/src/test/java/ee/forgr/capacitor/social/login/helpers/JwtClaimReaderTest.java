@@ -0,0 +1,100 @@
+package ee.forgr.capacitor.social.login.helpers;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import org.junit.Test;
+
+public class JwtClaimReaderTest {
+
+  private static String token(String payload) {
+    Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+    String header = "{\"alg\":\"RS256\"}";
+    return (
+      encoder.encodeToString(header.getBytes(StandardCharsets.UTF_8)) +
+      "." +
+      encoder.encodeToString(payload.getBytes(StandardCharsets.UTF_8)) +
+      ".c2ln"
+    );
+  }
+
+  @Test
+  public void readsTheRegisteredClaims() {
+    JwtClaims claims = JwtClaimReader.read(
+      token(
+        "{\"iss\":\"https://appleid.apple.com\",\"aud\":\"app\"," +
+        "\"exp\":1893456000,\"iat\":1700000000,\"sub\":\"001.abc\"," +
+        "\"email\":\"a@b.c\",\"nonce\":\"n1\",\"email_verified\":true}"
+      )
+    );
+    assertEquals("https://appleid.apple.com", claims.getIssuer());
+    assertEquals(Collections.singletonList("app"), claims.getAudience());
+    assertEquals(1893456000L, claims.getExpiresAt());
+    assertEquals(1700000000L, claims.getIssuedAt());
+    assertEquals("001.abc", claims.getSubject());
+    assertEquals("a@b.c", claims.getEmail());
+    assertEquals("n1", claims.getNonce());
+  }
+
+  @Test
+  public void audienceCanBeAList() {
+    JwtClaims claims = JwtClaimReader.read(
+      token("{\"aud\": [\"a\", \"b\"], \"exp\": 1893456000.0}")
+    );
+    assertEquals(Arrays.asList("a", "b"), claims.getAudience());
+    assertEquals(1893456000L, claims.getExpiresAt());
+  }
+
+  @Test
+  public void skipsNestedValuesAndDecodesEscapes() {
+    JwtClaims claims = JwtClaimReader.read(
+      token(
+        "{\"extra\":{\"sub\":\"wrong\",\"list\":[1,\"]\"]}," +
+        "\"name\":\"\u00e9l\u00e8ve\",\"sub\":\"a\\\"b\\u00e9\\/c\"}"
+      )
+    );
+    assertEquals("a\"b\u00e9/c", claims.getSubject());
+    assertNull(claims.getEmail());
+    assertEquals(0, claims.getExpiresAt());
+    assertTrue(claims.getAudience().isEmpty());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsATokenWithoutThreeSegments() {
+    JwtClaimReader.read("abc.def");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsATruncatedPayload() {
+    JwtClaimReader.read(token("{\"sub\":\"abc"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsABadUnicodeEscape() {
+    JwtClaimReader.read(token("{\"sub\":\"\\u00g1\"}"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsATruncatedNestedObject() {
+    JwtClaimReader.read(token("{\"extra\":{\"a\":[1,2"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsATruncatedAudienceList() {
+    JwtClaimReader.read(token("{\"aud\":[\"a\","));
+  }
+
+  @Test
+  public void skipsDeeplyNestedObjects() {
+    JwtClaims claims = JwtClaimReader.read(
+      token(
+        "{\"a\":{\"b\":{\"c\":[{\"d\":{\"sub\":\"x\"}}]}}," +
+        "\"sub\":\"user-1\"}"
+      )
+    );
+    assertEquals("user-1", claims.getSubject());
+  }
+}
@@ -0,0 +1,53 @@
+package ee.forgr.capacitor.social.login.helpers;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class OkHttpTransportTest {
+
+  private MockWebServer server;
+  private OkHttpTransport transport;
+
+  @Before
+  public void setUp() throws IOException {
+    server = new MockWebServer();
+    server.start();
+    transport = new OkHttpTransport();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    transport.shutdown();
+    server.shutdown();
+  }
+
+  @Test
+  public void sequentialCallsReuseOneConnection() throws Exception {
+    for (int i = 0; i < 3; i++) {
+      server.enqueue(new MockResponse().setBody("{\"keys\":[]}"));
+      Request request = new Request.Builder()
+        .url(server.url("/jwks"))
+        .get()
+        .build();
+      try (Response response = transport.newCall(request).execute()) {
+        assertEquals(200, response.code());
+        response.body().string();
+      }
+    }
+
+    assertEquals(3, transport.getCallsStarted());
+    assertEquals(1, transport.getConnectionsOpened());
+    assertEquals(1, transport.getPooledConnectionCount());
+    for (int i = 0; i < 3; i++) {
+      assertEquals(i, server.takeRequest().getSequenceNumber());
+    }
+  }
+}
@@ -0,0 +1,245 @@
+package ee.forgr.capacitor.social.login.helpers;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RefreshTokenGrantTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private MockWebServer server;
+  private OkHttpClient okHttp;
+  private ScheduledExecutorService scheduler;
+  private KeyPair keyPair;
+  private final List<TokenResponseParser.TokenResponse> saved =
+    Collections.synchronizedList(new ArrayList<>());
+  private final List<JwtClaims> savedClaims = Collections.synchronizedList(
+    new ArrayList<>()
+  );
+  private volatile IOException storeError;
+  private RefreshTokenGrant grant;
+
+  @Before
+  public void setUp() throws Exception {
+    server = new MockWebServer();
+    server.start();
+    okHttp = new OkHttpClient();
+    scheduler = Executors.newSingleThreadScheduledExecutor();
+    keyPair = IdTokenVerifierTest.newKeyPair();
+    String jwks = IdTokenVerifierTest.jwksOf("key-1", keyPair);
+
+    HttpTransport transport = new HttpTransport() {
+      @Override
+      public Call newCall(Request request) {
+        return okHttp.newCall(request);
+      }
+
+      @Override
+      public void shutdown() {}
+    };
+    IdTokenVerifier verifier = new IdTokenVerifier(
+      new JwksKeyStore(
+        url -> jwks,
+        new TokenStore(
+          new File(folder.getRoot(), "tokens.bin"),
+          scheduler,
+          10_000,
+          LogSink.NONE
+        ),
+        60_000,
+        60_000,
+        LogSink.NONE
+      ),
+      IdTokenVerifierTest.JWKS_URL,
+      Collections.singletonList(IdTokenVerifierTest.ISSUER),
+      IdTokenVerifierTest.AUDIENCE
+    );
+    grant = new RefreshTokenGrant(
+      new ResilientHttpClient(
+        transport,
+        scheduler,
+        new CircuitBreaker(100, 60_000),
+        1,
+        10,
+        40,
+        2_000,
+        5_000
+      ),
+      server.url("/auth/token").toString(),
+      IdTokenVerifierTest.AUDIENCE,
+      verifier,
+      (tokens, claims, clientSecret) -> {
+        if (storeError != null) {
+          throw storeError;
+        }
+        saved.add(tokens);
+        savedClaims.add(claims);
+      }
+    );
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    scheduler.shutdownNow();
+    okHttp.dispatcher().executorService().shutdown();
+    server.shutdown();
+  }
+
+  /** Completes with the tokens, or fails with the error message. */
+  private static class Result implements RefreshTokenGrant.Listener {
+
+    final CompletableFuture<TokenResponseParser.TokenResponse> future =
+      new CompletableFuture<>();
+
+    @Override
+    public void onRefreshed(TokenResponseParser.TokenResponse tokens) {
+      future.complete(tokens);
+    }
+
+    @Override
+    public void onFailure(String message, Exception e) {
+      future.completeExceptionally(new IOException(message, e));
+    }
+
+    TokenResponseParser.TokenResponse get() throws Exception {
+      return future.get(10, TimeUnit.SECONDS);
+    }
+
+    String error() throws Exception {
+      try {
+        future.get(10, TimeUnit.SECONDS);
+      } catch (ExecutionException e) {
+        return e.getCause().getMessage();
+      }
+      fail("Refresh should have failed");
+      return null;
+    }
+  }
+
+  private static String idToken(KeyPair signer) throws Exception {
+    return IdTokenVerifierTest.sign(
+      "key-1",
+      signer,
+      new JSONObject()
+        .put("iss", IdTokenVerifierTest.ISSUER)
+        .put("aud", IdTokenVerifierTest.AUDIENCE)
+        .put("sub", "user-1")
+        .put("exp", System.currentTimeMillis() / 1000 + 600)
+    );
+  }
+
+  @Test
+  public void concurrentRefreshesShareOneRequest() throws Exception {
+    server.enqueue(
+      new MockResponse()
+        .setHeadersDelay(300, TimeUnit.MILLISECONDS)
+        .setBody("{\"access_token\":\"a2\",\"expires_in\":3600}")
+    );
+    Result[] results = new Result[3];
+    for (int i = 0; i < results.length; i++) {
+      results[i] = new Result();
+      grant.refresh("r1", "secret", results[i]);
+    }
+
+    for (Result result : results) {
+      assertEquals("a2", result.get().accessToken);
+      assertEquals("r1", result.get().refreshToken);
+    }
+    assertEquals(1, server.getRequestCount());
+    assertEquals(1, saved.size());
+    RecordedRequest request = server.takeRequest();
+    assertTrue(
+      request.getBody().readUtf8().contains("grant_type=refresh_token")
+    );
+  }
+
+  @Test
+  public void missingClientSecretFailsWithoutARequest() throws Exception {
+    Result result = new Result();
+    grant.refresh("r1", null, result);
+
+    assertEquals("No client secret available to refresh", result.error());
+    assertEquals(0, server.getRequestCount());
+  }
+
+  @Test
+  public void failedRefreshIsReportedToEveryCaller() throws Exception {
+    server.enqueue(
+      new MockResponse()
+        .setHeadersDelay(300, TimeUnit.MILLISECONDS)
+        .setResponseCode(400)
+        .setBody("{\"error\":\"invalid_grant\"}")
+    );
+    Result first = new Result();
+    Result second = new Result();
+    grant.refresh("r1", "secret", first);
+    grant.refresh("r1", "secret", second);
+
+    assertEquals("Cannot refresh access_token", first.error());
+    assertEquals("Cannot refresh access_token", second.error());
+    assertTrue(saved.isEmpty());
+  }
+
+  @Test
+  public void refreshedIdTokenIsVerified() throws Exception {
+    server.enqueue(
+      new MockResponse()
+        .setBody(
+          "{\"access_token\":\"a2\",\"id_token\":\"" + idToken(keyPair) + "\"}"
+        )
+    );
+    Result result = new Result();
+    grant.refresh("r1", "secret", result);
+
+    assertEquals("a2", result.get().accessToken);
+    assertEquals("user-1", savedClaims.get(0).getSubject());
+  }
+
+  @Test
+  public void forgedIdTokenFailsTheRefresh() throws Exception {
+    String forged = idToken(IdTokenVerifierTest.newKeyPair());
+    server.enqueue(
+      new MockResponse()
+        .setBody("{\"access_token\":\"a2\",\"id_token\":\"" + forged + "\"}")
+    );
+    Result result = new Result();
+    grant.refresh("r1", "secret", result);
+
+    assertEquals("Cannot refresh access_token", result.error());
+    assertTrue(saved.isEmpty());
+  }
+
+  @Test
+  public void storeFailureFailsTheRefresh() throws Exception {
+    storeError = new IOException("Apple refresh returned another account");
+    server.enqueue(new MockResponse().setBody("{\"access_token\":\"a2\"}"));
+    Result result = new Result();
+    grant.refresh("r1", "secret", result);
+
+    assertEquals("Cannot refresh access_token", result.error());
+  }
+}
@@ -0,0 +1,259 @@
+package ee.forgr.capacitor.social.login.helpers;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.SocketPolicy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ResilientHttpClientTest {
+
+  private static final MediaType FORM = MediaType.get(
+    "application/x-www-form-urlencoded"
+  );
+
+  private MockWebServer server;
+  private OkHttpClient okHttp;
+  private ScheduledExecutorService scheduler;
+
+  @Before
+  public void setUp() throws IOException {
+    server = new MockWebServer();
+    server.start();
+    okHttp = new OkHttpClient.Builder().retryOnConnectionFailure(false).build();
+    scheduler = Executors.newSingleThreadScheduledExecutor();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    scheduler.shutdownNow();
+    okHttp.dispatcher().executorService().shutdown();
+    server.shutdown();
+  }
+
+  private ResilientHttpClient client(
+    CircuitBreaker breaker,
+    int maxAttempts,
+    long attemptTimeoutMs,
+    long deadlineMs
+  ) {
+    HttpTransport transport = new HttpTransport() {
+      @Override
+      public Call newCall(Request request) {
+        return okHttp.newCall(request);
+      }
+
+      @Override
+      public void shutdown() {}
+    };
+    return new ResilientHttpClient(
+      transport,
+      scheduler,
+      breaker,
+      maxAttempts,
+      10,
+      40,
+      attemptTimeoutMs,
+      deadlineMs
+    );
+  }
+
+  private ResilientHttpClient client(int maxAttempts) {
+    return client(new CircuitBreaker(100, 60_000), maxAttempts, 2_000, 10_000);
+  }
+
+  /** Status code of the final response, or -1 when the call failed. */
+  private int send(ResilientHttpClient client) throws Exception {
+    return send(client, true, server.url("/auth/token"));
+  }
+
+  private int send(
+    ResilientHttpClient client,
+    boolean idempotent,
+    HttpUrl url
+  ) throws Exception {
+    CompletableFuture<Integer> result = new CompletableFuture<>();
+    Request request = new Request.Builder()
+      .url(url)
+      .post(RequestBody.create("code=single-use", FORM))
+      .build();
+    Callback callback = new Callback() {
+      @Override
+      public void onFailure(Call call, IOException e) {
+        result.complete(-1);
+      }
+
+      @Override
+      public void onResponse(Call call, Response response) {
+        response.close();
+        result.complete(response.code());
+      }
+    };
+    if (idempotent) {
+      client.enqueue(request, callback);
+    } else {
+      client.enqueueNonIdempotent(request, callback);
+    }
+    return result.get(10, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void retriesServerErrorsUntilSuccess() throws Exception {
+    server.enqueue(new MockResponse().setResponseCode(503));
+    server.enqueue(new MockResponse().setResponseCode(500));
+    server.enqueue(new MockResponse().setBody("{}"));
+    ResilientHttpClient client = client(3);
+
+    assertEquals(200, send(client));
+    assertEquals(3, server.getRequestCount());
+    assertEquals(2, client.getRetryCount());
+    assertEquals(0, client.getFailureCount());
+  }
+
+  @Test
+  public void clientErrorsAreNotRetried() throws Exception {
+    server.enqueue(new MockResponse().setResponseCode(400));
+    ResilientHttpClient client = client(3);
+
+    assertEquals(400, send(client));
+    assertEquals(1, server.getRequestCount());
+  }
+
+  @Test
+  public void returnsTheLastResponseWhenAttemptsRunOut() throws Exception {
+    for (int i = 0; i < 3; i++) {
+      server.enqueue(new MockResponse().setResponseCode(502));
+    }
+    ResilientHttpClient client = client(2);
+
+    assertEquals(502, send(client));
+    assertEquals(2, server.getRequestCount());
+    assertEquals(1, client.getFailureCount());
+  }
+
+  @Test
+  public void slowAttemptsTimeOutAndAreRetried() throws Exception {
+    server.enqueue(
+      new MockResponse().setHeadersDelay(2, TimeUnit.SECONDS).setBody("{}")
+    );
+    server.enqueue(new MockResponse().setBody("{}"));
+    ResilientHttpClient client = client(
+      new CircuitBreaker(100, 60_000),
+      3,
+      200,
+      5_000
+    );
+
+    assertEquals(200, send(client));
+    assertEquals(2, client.getAttemptCount());
+  }
+
+  @Test
+  public void overallDeadlineStopsRetries() throws Exception {
+    for (int i = 0; i < 5; i++) {
+      server.enqueue(
+        new MockResponse().setHeadersDelay(1, TimeUnit.SECONDS).setBody("{}")
+      );
+    }
+    ResilientHttpClient client = client(
+      new CircuitBreaker(100, 60_000),
+      5,
+      200,
+      300
+    );
+
+    long start = System.nanoTime();
+    assertEquals(-1, send(client));
+    assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+    assertTrue(client.getAttemptCount() < 5);
+  }
+
+  @Test
+  public void codeExchangeIsNotRetriedAfterAReadTimeout() throws Exception {
+    server.enqueue(
+      new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE)
+    );
+    server.enqueue(new MockResponse().setBody("{}"));
+    ResilientHttpClient client = client(
+      new CircuitBreaker(100, 60_000),
+      3,
+      200,
+      5_000
+    );
+
+    assertEquals(-1, send(client, false, server.url("/auth/token")));
+    assertEquals(1, server.getRequestCount());
+    assertEquals(1, client.getAttemptCount());
+  }
+
+  @Test
+  public void codeExchangeIsNotRetriedAfterAServerError() throws Exception {
+    server.enqueue(new MockResponse().setResponseCode(503));
+    server.enqueue(new MockResponse().setBody("{}"));
+    ResilientHttpClient client = client(3);
+
+    assertEquals(503, send(client, false, server.url("/auth/token")));
+    assertEquals(1, server.getRequestCount());
+  }
+
+  @Test
+  public void codeExchangeIsRetriedWhenItCouldNotConnect() throws Exception {
+    MockWebServer closed = new MockWebServer();
+    closed.start();
+    HttpUrl url = closed.url("/auth/token");
+    closed.shutdown();
+    ResilientHttpClient client = client(3);
+
+    assertEquals(-1, send(client, false, url));
+    assertEquals(3, client.getAttemptCount());
+  }
+
+  @Test
+  public void openCircuitFailsFastThenRecovers() throws Exception {
+    server.enqueue(new MockResponse().setResponseCode(500));
+    server.enqueue(new MockResponse().setResponseCode(500));
+    server.enqueue(new MockResponse().setBody("{}"));
+    CircuitBreaker breaker = new CircuitBreaker(2, 200);
+    ResilientHttpClient client = client(breaker, 1, 2_000, 5_000);
+
+    assertEquals(500, send(client));
+    assertEquals(500, send(client));
+    assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+    assertEquals(-1, send(client));
+    assertEquals(2, server.getRequestCount());
+    assertEquals(1, client.getShortCircuitCount());
+
+    Thread.sleep(250);
+    assertEquals(200, send(client));
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    assertEquals(1, breaker.getOpenedCount());
+  }
+
+  @Test
+  public void failedTrialReopensTheCircuit() {
+    CircuitBreaker breaker = new CircuitBreaker(1, 0);
+    breaker.recordFailure();
+    assertTrue(breaker.allowRequest());
+    assertFalse(breaker.allowRequest());
+    breaker.recordFailure();
+    assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    assertEquals(2, breaker.getOpenedCount());
+  }
+}
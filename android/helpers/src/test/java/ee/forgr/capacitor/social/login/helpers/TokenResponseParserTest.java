@@ -0,0 +1,88 @@
+package ee.forgr.capacitor.social.login.helpers;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import org.junit.Test;
+
+public class TokenResponseParserTest {
+
+  private static TokenResponseParser.TokenResponse parse(String json)
+    throws IOException {
+    return TokenResponseParser.parse(new StringReader(json));
+  }
+
+  @Test
+  public void readsTheTokenFields() throws Exception {
+    TokenResponseParser.TokenResponse tokens = parse(
+      "{\"access_token\":\"a1\",\"token_type\":\"Bearer\"," +
+      "\"expires_in\":3600,\"refresh_token\":\"r1\",\"id_token\":\"x.y.z\"}"
+    );
+    assertEquals("a1", tokens.accessToken);
+    assertEquals("r1", tokens.refreshToken);
+    assertEquals("x.y.z", tokens.idToken);
+    assertEquals("Bearer", tokens.tokenType);
+    assertEquals(3600, tokens.expiresIn);
+  }
+
+  @Test
+  public void missingOptionalFieldsAreNull() throws Exception {
+    TokenResponseParser.TokenResponse tokens = parse(
+      "{ \"access_token\" : \"a1\" , \"id_token\": null }"
+    );
+    assertEquals("a1", tokens.accessToken);
+    assertNull(tokens.refreshToken);
+    assertNull(tokens.idToken);
+    assertEquals(-1, tokens.expiresIn);
+  }
+
+  @Test
+  public void unknownFieldsAreSkipped() throws Exception {
+    TokenResponseParser.TokenResponse tokens = parse(
+      "{\"scope\":[\"a\",{\"b\":\"}\"}],\"n\":-1.5e3,\"ok\":true," +
+      "\"nested\":{\"access_token\":\"wrong\"},\"access_token\":\"a\\u00e9\\\"\"}"
+    );
+    assertEquals("a\u00e9\"", tokens.accessToken);
+  }
+
+  @Test
+  public void emptyObject() throws Exception {
+    assertNull(parse("{}").accessToken);
+  }
+
+  @Test(expected = IOException.class)
+  public void truncatedInputFails() throws Exception {
+    parse("{\"access_token\":\"a1");
+  }
+
+  @Test(expected = IOException.class)
+  public void nonObjectFails() throws Exception {
+    parse("[\"access_token\"]");
+  }
+
+  @Test(expected = IOException.class)
+  public void truncatedUnknownValueFails() throws Exception {
+    parse("{\"scope\":[\"a\",{\"b\":1}");
+  }
+
+  @Test(expected = IOException.class)
+  public void badUnicodeEscapeFails() throws Exception {
+    parse("{\"access_token\":\"a\\u00zz\"}");
+  }
+
+  @Test(expected = IOException.class)
+  public void badUnicodeEscapeInASkippedValueFails() throws Exception {
+    parse("{\"scope\":\"\\u12\",\"access_token\":\"a\"}");
+  }
+
+  @Test(expected = IOException.class)
+  public void missingCommaFails() throws Exception {
+    parse("{\"access_token\":\"a\" \"id_token\":\"b\"}");
+  }
+
+  @Test(expected = IOException.class)
+  public void trailingCommaFails() throws Exception {
+    parse("{\"access_token\":\"a\",}");
+  }
+}
@@ -0,0 +1,160 @@
+package ee.forgr.capacitor.social.login.helpers;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TokenStoreTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private ScheduledExecutorService scheduler;
+  private File file;
+
+  @Before
+  public void setUp() {
+    scheduler = Executors.newSingleThreadScheduledExecutor();
+    file = new File(folder.getRoot(), "tokens.bin");
+  }
+
+  @After
+  public void tearDown() {
+    scheduler.shutdownNow();
+  }
+
+  @Test
+  public void valuesSurviveAReload() {
+    TokenStore store = new TokenStore(file, scheduler, 10_000, LogSink.NONE);
+    store.put("apple", tokens("idToken", "a.b.c", "refreshToken", "r1"));
+    store.flush();
+
+    TokenStore reloaded = new TokenStore(file, scheduler, 10_000, LogSink.NONE);
+    assertEquals("a.b.c", reloaded.get("apple").get("idToken"));
+    assertEquals("r1", reloaded.get("apple").get("refreshToken"));
+    assertTrue(reloaded.get("google").isEmpty());
+  }
+
+  @Test
+  public void rapidUpdatesAreCoalescedIntoOneWrite() throws Exception {
+    TokenStore store = new TokenStore(file, scheduler, 50, LogSink.NONE);
+    for (int i = 0; i < 20; i++) {
+      store.put("google", tokens("idToken", "token-" + i));
+    }
+    assertEquals("token-19", store.get("google").get("idToken"));
+
+    scheduler.schedule(() -> {}, 200, TimeUnit.MILLISECONDS).get();
+    assertEquals(1, store.getWriteCount());
+    assertEquals(
+      "token-19",
+      new TokenStore(file, scheduler, 50, LogSink.NONE)
+        .get("google")
+        .get("idToken")
+    );
+  }
+
+  @Test
+  public void writesAfterShutdownAreFlushedInline() {
+    TokenStore store = new TokenStore(file, scheduler, 10_000, LogSink.NONE);
+    store.preload();
+    scheduler.shutdown();
+
+    store.put("apple", tokens("idToken", "late"));
+    assertEquals(1, store.getWriteCount());
+    store.remove("apple");
+    assertEquals(2, store.getWriteCount());
+    assertFalse(
+      new TokenStore(file, scheduler, 10_000, LogSink.NONE).contains("apple")
+    );
+  }
+
+  @Test
+  public void removeAndNullValues() {
+    TokenStore store = new TokenStore(file, scheduler, 10_000, LogSink.NONE);
+    store.put("apple", tokens("idToken", "x", "clientSecret", null));
+    assertFalse(store.get("apple").containsKey("clientSecret"));
+
+    store.remove("apple");
+    store.flush();
+    assertFalse(
+      new TokenStore(file, scheduler, 10_000, LogSink.NONE).contains("apple")
+    );
+  }
+
+  @Test
+  public void concurrentFlushesKeepTheLatestValues() throws Exception {
+    TokenStore store = new TokenStore(file, scheduler, 10_000, LogSink.NONE);
+    ExecutorService writers = Executors.newFixedThreadPool(8);
+    CountDownLatch start = new CountDownLatch(1);
+    Future<?>[] results = new Future<?>[8];
+    try {
+      for (int t = 0; t < results.length; t++) {
+        String namespace = "provider-" + t;
+        results[t] = writers.submit(() -> {
+          start.await();
+          for (int i = 0; i < 50; i++) {
+            store.put(namespace, tokens("idToken", "token-" + i));
+            assertTrue(store.flush());
+          }
+          return null;
+        });
+      }
+      start.countDown();
+      for (Future<?> result : results) {
+        result.get(10, TimeUnit.SECONDS);
+      }
+    } finally {
+      writers.shutdownNow();
+    }
+
+    TokenStore reloaded = new TokenStore(file, scheduler, 10_000, LogSink.NONE);
+    for (int t = 0; t < results.length; t++) {
+      assertEquals("token-49", reloaded.get("provider-" + t).get("idToken"));
+    }
+    assertFalse(new File(file.getPath() + ".tmp").exists());
+  }
+
+  @Test
+  public void failedFlushIsReported() throws Exception {
+    File blocker = folder.newFile("not-a-directory");
+    TokenStore store = new TokenStore(
+      new File(blocker, "tokens.bin"),
+      scheduler,
+      10_000,
+      LogSink.NONE
+    );
+    store.put("apple", tokens("idToken", "x"));
+    assertFalse(store.flush());
+  }
+
+  @Test
+  public void unreadableFileStartsEmpty() throws Exception {
+    try (FileOutputStream out = new FileOutputStream(file)) {
+      out.write(new byte[] { 1, 2, 3, 4, 5 });
+    }
+    TokenStore store = new TokenStore(file, scheduler, 10_000, LogSink.NONE);
+    assertTrue(store.get("apple").isEmpty());
+  }
+
+  private static Map<String, String> tokens(String... keyValues) {
+    Map<String, String> values = new HashMap<>();
+    for (int i = 0; i < keyValues.length; i += 2) {
+      values.put(keyValues[i], keyValues[i + 1]);
+    }
+    return values;
+  }
+}
@@ -29,24 +29,36 @@ import androidx.browser.customtabs.CustomTabsIntent;
 import androidx.browser.customtabs.CustomTabsServiceConnection;
 import androidx.browser.customtabs.CustomTabsSession;
 import androidx.browser.trusted.TrustedWebActivityIntentBuilder;
-import com.auth0.android.jwt.JWT;
 import com.getcapacitor.JSObject;
 import com.getcapacitor.PluginCall;
 import com.google.androidbrowserhelper.trusted.TwaLauncher;
+import ee.forgr.capacitor.social.login.helpers.AppleLoginResponse;
+import ee.forgr.capacitor.social.login.helpers.AuthExecutor;
+import ee.forgr.capacitor.social.login.helpers.AuthStateNotifier;
+import ee.forgr.capacitor.social.login.helpers.IdTokenVerifier;
+import ee.forgr.capacitor.social.login.helpers.JsonHelper;
+import ee.forgr.capacitor.social.login.helpers.JwtClaims;
+import ee.forgr.capacitor.social.login.helpers.LoginMetrics;
+import ee.forgr.capacitor.social.login.helpers.RefreshCallback;
+import ee.forgr.capacitor.social.login.helpers.RefreshTokenGrant;
+import ee.forgr.capacitor.social.login.helpers.ResilientHttpClient;
+import ee.forgr.capacitor.social.login.helpers.SessionSnapshot;
 import ee.forgr.capacitor.social.login.helpers.SocialProvider;
+import ee.forgr.capacitor.social.login.helpers.TokenResponseParser;
+import ee.forgr.capacitor.social.login.helpers.TokenStore;
 import java.io.IOException;
-import java.util.Objects;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
 import okhttp3.Call;
 import okhttp3.Callback;
 import okhttp3.FormBody;
-import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
-import org.json.JSONTokener;
 
 public class AppleProvider implements SocialProvider {
 
@@ -59,75 +71,124 @@ public class AppleProvider implements SocialProvider {
     "APPLE_LOGIN_Q16ob0k_SHARED_PERF";
   private static final String APPLE_DATA_PREFERENCE =
     "APPLE_LOGIN_APPLE_DATA_83b2d6db-17fe-49c9-8c33-e3f5d02f9f84";
+  private static final String TOKEN_STORE_NAMESPACE = "apple";
 
-  private PluginCall lastcall;
+  private volatile PluginCall lastcall;
+  private volatile String lastNonce;
   private String appleAuthURLFull;
 
-  private String idToken;
-  private String refreshToken;
-  private String accessToken;
+  private volatile SessionSnapshot session = SessionSnapshot.EMPTY;
+  private volatile JSObject profile;
+  // Memory only: the app supplies it again on refresh after a restart
+  private volatile String clientSecret;
 
   private final String clientId;
   private final String redirectUrl;
   private final Activity activity;
   private final Context context;
+  private final AuthExecutor executor;
+  private final ResilientHttpClient tokenClient;
+  private final TokenStore tokenStore;
+  private final LoginMetrics.Recorder metrics;
+  private final IdTokenVerifier idTokenVerifier;
+  private final AuthStateNotifier.Channel authState;
+  private final RefreshTokenGrant refreshGrant;
 
   private CustomTabsClient customTabsClient;
   private CustomTabsSession currentSession;
+  private boolean customTabsBound;
+  // Sign-in URL for the default options, prefetched while the user has not tapped yet
+  private String preparedAuthUrl;
   CustomTabsServiceConnection connection = new CustomTabsServiceConnection() {
     @Override
     public void onCustomTabsServiceConnected(
       @NonNull ComponentName name,
       CustomTabsClient client
     ) {
-      customTabsClient = client;
-      client.warmup(0);
+      synchronized (AppleProvider.this) {
+        customTabsClient = client;
+        client.warmup(0);
+        mayLaunchPreparedUrl();
+      }
     }
 
     @Override
-    public void onServiceDisconnected(ComponentName name) {}
+    public void onServiceDisconnected(ComponentName name) {
+      synchronized (AppleProvider.this) {
+        customTabsClient = null;
+        currentSession = null;
+      }
+    }
   };
 
   public AppleProvider(
     String redirectUrl,
     String clientId,
     Activity activity,
-    Context context
+    Context context,
+    AuthExecutor executor,
+    ResilientHttpClient tokenClient,
+    TokenStore tokenStore,
+    LoginMetrics.Recorder metrics,
+    IdTokenVerifier idTokenVerifier,
+    AuthStateNotifier.Channel authState
   ) {
     this.redirectUrl = redirectUrl;
     this.clientId = clientId;
     this.activity = activity;
     this.context = context;
+    this.executor = executor;
+    this.tokenClient = tokenClient;
+    this.tokenStore = tokenStore;
+    this.metrics = metrics;
+    this.idTokenVerifier = idTokenVerifier;
+    this.authState = authState;
+    this.refreshGrant = new RefreshTokenGrant(
+      tokenClient,
+      TOKENURL,
+      clientId,
+      idTokenVerifier,
+      this::saveRefreshedTokens
+    );
   }
 
   public void initialize() {
-    String data = context
-      .getSharedPreferences(SHARED_PREFERENCE_NAME, Context.MODE_PRIVATE)
-      .getString(APPLE_DATA_PREFERENCE, null);
+    prepareLogin();
+    try {
+      executor.execute(idTokenVerifier::prefetchKeys);
+    } catch (RejectedExecutionException e) {
+      Log.w(LOG_TAG, "Cannot prefetch apple signing keys", e);
+    }
+
+    Map<String, String> data = LegacyTokenMigration.restore(
+      context,
+      tokenStore,
+      TOKEN_STORE_NAMESPACE,
+      SHARED_PREFERENCE_NAME,
+      APPLE_DATA_PREFERENCE
+    );
 
-    if (data == null || data.isEmpty()) {
+    if (data.isEmpty()) {
       Log.i(SocialLoginPlugin.LOG_TAG, "No data to restore for apple login");
       return;
     }
-    try {
-      JSONObject object = new JSONObject(data);
-      String idToken = object.optString("idToken", null);
-      String refreshToken = object.optString("refreshToken", null);
-      String accessToken = object.optString("accessToken", null);
-      AppleProvider.this.idToken = idToken;
-      AppleProvider.this.refreshToken = refreshToken;
-      AppleProvider.this.accessToken = accessToken;
-      Log.i(
-        SocialLoginPlugin.LOG_TAG,
-        String.format("Apple restoreState: %s", object)
-      );
-    } catch (JSONException e) {
-      Log.e(
-        SocialLoginPlugin.LOG_TAG,
-        "Apple restoreState: Failed to parse JSON",
-        e
-      );
+    AppleProvider.this.session = SessionSnapshot.fromIdToken(
+      data.get("idToken"),
+      data.get("accessToken"),
+      data.get("refreshToken")
+    );
+    if (data.containsKey("clientSecret")) {
+      // Older versions stored the client secret, drop it from the disk
+      Map<String, String> withoutSecret = new HashMap<>(data);
+      withoutSecret.remove("clientSecret");
+      tokenStore.put(TOKEN_STORE_NAMESPACE, withoutSecret);
     }
+    authState.track(this.session);
+    JwtClaims claims = this.session.getClaims();
+    if (claims != null) {
+      this.profile = createProfileObject(claims);
+    }
+    Log.i(SocialLoginPlugin.LOG_TAG, "Apple restoreState: session restored");
   }
 
   public void handleIntent(Intent intent) {
@@ -140,16 +201,15 @@ public class AppleProvider implements SocialProvider {
     String scheme = data.getScheme(); // "capgo-demo-app"
     String host = data.getHost(); // "path"
     String path = data.getPath(); // Additional path segments
-    String query = data.getQuery(); // Query parameters
 
+    // The query carries the tokens, never log it
     Log.i(
       SocialLoginPlugin.LOG_TAG,
       String.format(
-        "Recieved apple login intent: %s, %s, %s, %s",
+        "Recieved apple login intent: %s, %s, %s",
         scheme,
         host,
-        path,
-        query
+        path
       )
     );
 
@@ -161,11 +221,14 @@ public class AppleProvider implements SocialProvider {
 
   @Override
   public void login(PluginCall call, JSONObject config) {
-    if (this.lastcall != null) {
-      call.reject("Last call is not null");
+    // A new login replaces the pending one, the user may have dismissed the
+    // browser without a result
+    PluginCall pending = this.lastcall;
+    if (pending != null) {
+      this.lastcall = null;
+      pending.reject("Login superseded by a new login call");
     }
-
-    String state = UUID.randomUUID().toString();
+    metrics.start();
 
     // Extract scopes from config
     String scopes = DEFAULT_SCOPE;
@@ -173,7 +236,7 @@ public class AppleProvider implements SocialProvider {
       try {
         JSONArray scopesArray = config.getJSONArray("scopes");
         if (scopesArray.length() > 0) {
-          scopes = String.join("%20", toStringArray(scopesArray));
+          scopes = String.join("%20", JsonHelper.toStringArray(scopesArray));
         }
       } catch (JSONException e) {
         Log.e(SocialLoginPlugin.LOG_TAG, "Error parsing scopes", e);
@@ -189,27 +252,16 @@ public class AppleProvider implements SocialProvider {
       }
     }
 
-    this.appleAuthURLFull =
-      AUTHURL +
-      "?client_id=" +
-      this.clientId +
-      "&redirect_uri=" +
-      this.redirectUrl +
-      "&response_type=code&scope=" +
-      scopes +
-      "&response_mode=form_post&state=" +
-      state;
-
-    if (nonce != null) {
-      this.appleAuthURLFull += "&nonce=" + nonce;
-    }
+    this.appleAuthURLFull = takeAuthUrl(scopes, nonce);
 
     if (context == null || activity == null) {
+      metrics.fail();
       call.reject("Context or Activity is null");
       return;
     }
 
     this.lastcall = call;
+    this.lastNonce = nonce;
     call.setKeepAlive(true);
     activity.runOnUiThread(() ->
       setupWebview(context, activity, call, appleAuthURLFull)
@@ -218,27 +270,27 @@ public class AppleProvider implements SocialProvider {
 
   @Override
   public void logout(PluginCall call) {
-    if (this.idToken == null || this.idToken.isEmpty()) {
+    if (!this.session.hasTokens()) {
       call.reject("Not logged in; Cannot logout");
       return;
     }
 
-    context
-      .getSharedPreferences(SHARED_PREFERENCE_NAME, Context.MODE_PRIVATE)
-      .edit()
-      .clear()
-      .apply();
-    this.idToken = null;
-    this.refreshToken = null;
-    this.accessToken = null;
+    tokenStore.remove(TOKEN_STORE_NAMESPACE);
+    this.session = SessionSnapshot.EMPTY;
+    this.profile = null;
+    this.clientSecret = null;
+    authState.publish(this.session, AuthStateNotifier.REASON_LOGOUT);
 
     call.resolve();
   }
 
   @Override
   public void getAuthorizationCode(PluginCall call) {
-    if (this.idToken != null && !this.idToken.isEmpty()) {
-      call.resolve(new JSObject().put("jwt", this.idToken));
+    SessionSnapshot session = this.session;
+    if (session.isLoggedIn()) {
+      call.resolve(new JSObject().put("jwt", session.getIdToken()));
+    } else if (session.hasTokens()) {
+      call.reject("Apple-login session expired!");
     } else {
       call.reject("Apple-login not logged in!");
     }
@@ -246,25 +298,117 @@ public class AppleProvider implements SocialProvider {
 
   @Override
   public void isLoggedIn(PluginCall call) {
-    if (this.idToken != null && !this.idToken.isEmpty()) {
-      try {
-        JWT jwt = new JWT(this.idToken);
-        boolean isLoggedIn = !jwt.isExpired(0);
-        call.resolve(new JSObject().put("isLoggedIn", isLoggedIn));
-      } catch (Exception e) {
-        call.reject("Error checking login status", e);
-      }
-    } else {
-      call.resolve(new JSObject().put("isLoggedIn", false));
-    }
+    call.resolve(new JSObject().put("isLoggedIn", this.session.isLoggedIn()));
   }
 
   @Override
   public void refresh(PluginCall call) {
-    call.reject("Not implemented");
+    JSObject options = call.getObject("options", new JSObject());
+    String clientSecret = options.optString("clientSecret", null);
+    refreshSession(
+      clientSecret,
+      new RefreshCallback() {
+        @Override
+        public void onRefreshed(JSObject result) {
+          call.resolve(
+            new JSObject().put("provider", "apple").put("result", result)
+          );
+        }
+
+        @Override
+        public void onFailure(String message, Exception e) {
+          call.reject(message, e);
+        }
+      }
+    );
+  }
+
+  @Override
+  public SessionSnapshot getSession() {
+    return this.session;
+  }
+
+  @Override
+  public JSObject getCachedProfile() {
+    return this.profile;
+  }
+
+  @Override
+  public boolean canRefreshSession() {
+    return this.session.getRefreshToken() != null && this.clientSecret != null;
+  }
+
+  @Override
+  public void refreshSession(RefreshCallback callback) {
+    refreshSession(null, callback);
+  }
+
+  /**
+   * Exchange the stored refresh token for new tokens.
+   * Concurrent callers share a single request to the token endpoint.
+   */
+  public void refreshSession(String clientSecret, RefreshCallback callback) {
+    refreshGrant.refresh(
+      this.session.getRefreshToken(),
+      clientSecret != null && !clientSecret.isEmpty()
+        ? clientSecret
+        : this.clientSecret,
+      new RefreshTokenGrant.Listener() {
+        @Override
+        public void onRefreshed(TokenResponseParser.TokenResponse tokens) {
+          JSObject result = new JSObject();
+          result.put(
+            "accessToken",
+            createAccessTokenObject(tokens.accessToken, tokens.expiresIn)
+          );
+          result.put("idToken", tokens.idToken);
+          callback.onRefreshed(result);
+        }
+
+        @Override
+        public void onFailure(String message, Exception e) {
+          callback.onFailure(message, e);
+        }
+      }
+    );
+  }
+
+  // Runs once per refresh, the id token was verified by the grant
+  private void saveRefreshedTokens(
+    TokenResponseParser.TokenResponse tokens,
+    JwtClaims claims,
+    String clientSecret
+  ) throws IOException {
+    SessionSnapshot current = this.session;
+    if (claims == null) {
+      // Apple only sends a new id_token on some refreshes
+      tokens.idToken = current.getIdToken();
+    } else {
+      String subject = current.getSubject();
+      if (subject != null && !subject.equals(claims.getSubject())) {
+        throw new IOException("Apple refresh returned another account");
+      }
+      this.profile = createProfileObject(claims);
+    }
+    persistState(
+      tokens.idToken,
+      tokens.refreshToken,
+      tokens.accessToken,
+      clientSecret,
+      AuthStateNotifier.REASON_REFRESH
+    );
   }
 
   public void handleUrl(String url) {
+    PluginCall call = this.lastcall;
+    this.lastcall = null;
+    if (call == null) {
+      Log.w(LOG_TAG, "Received an apple login result without a pending login");
+      return;
+    }
+    // The browser is done with the current page, warm up the next login
+    prepareLogin();
+    metrics.mark(LoginMetrics.Phase.CREDENTIAL_RETURNED);
     Uri uri = Uri.parse(url);
     String success = uri.getQueryParameter("success");
     if ("true".equals(success)) {
@@ -272,35 +416,81 @@ public class AppleProvider implements SocialProvider {
       if (accessToken != null) {
         String refreshToken = uri.getQueryParameter("refresh_token");
         String idToken = uri.getQueryParameter("id_token");
+        String nonce = this.lastNonce;
+        // Verification may need to download Apple's keys
         try {
-          persistState(idToken, refreshToken, accessToken);
-          JSObject result = new JSObject();
-          result.put("accessToken", createAccessTokenObject(accessToken));
-          result.put("profile", createProfileObject(idToken));
-          result.put("idToken", idToken);
-
-          JSObject response = new JSObject();
-          response.put("provider", "apple");
-          response.put("result", result);
-
-          this.lastcall.resolve(response);
-        } catch (JSONException e) {
-          Log.e(SocialLoginPlugin.LOG_TAG, "Cannot persist state", e);
-          this.lastcall.reject("Cannot persist state", e);
+          executor.execute(() ->
+            resolveLogin(call, idToken, refreshToken, accessToken, nonce)
+          );
+        } catch (RejectedExecutionException e) {
+          metrics.fail();
+          call.reject("Cannot verify id token: executor is busy");
         }
       } else {
         String appleAuthCode = uri.getQueryParameter("code");
         String appleClientSecret = uri.getQueryParameter("client_secret");
-        requestForAccessToken(appleAuthCode, appleClientSecret);
+        requestForAccessToken(
+          call,
+          appleAuthCode,
+          appleClientSecret,
+          this.lastNonce
+        );
       }
     } else {
-      this.lastcall.reject("We couldn't get the Auth Code");
+      metrics.fail();
+      call.reject("We couldn't get the Auth Code");
     }
-    this.lastcall = null;
   }
 
-  private void requestForAccessToken(String code, String clientSecret) {
-    OkHttpClient client = new OkHttpClient();
+  private void resolveLogin(
+    PluginCall call,
+    String idToken,
+    String refreshToken,
+    String accessToken,
+    String nonce
+  ) {
+    JwtClaims claims;
+    try {
+      claims = idTokenVerifier.verify(idToken, nonce);
+    } catch (IdTokenVerifier.VerificationException e) {
+      metrics.fail();
+      call.reject("Id token verification failed: " + e.getMessage(), e);
+      return;
+    }
+    persistState(
+      idToken,
+      refreshToken,
+      accessToken,
+      null,
+      AuthStateNotifier.REASON_LOGIN
+    );
+    this.profile = createProfileObject(claims);
+    metrics.mark(LoginMetrics.Phase.PROFILE_FETCHED);
+    JSObject response;
+    try {
+      response = AppleLoginResponse.putLogin(
+        new JSObject(),
+        new JSObject(),
+        createAccessTokenObject(accessToken),
+        this.profile,
+        idToken
+      );
+    } catch (JSONException e) {
+      metrics.fail();
+      call.reject("Cannot build the login response", e);
+      return;
+    }
+
+    metrics.mark(LoginMetrics.Phase.RESOLVED);
+    call.resolve(response);
+  }
+
+  private void requestForAccessToken(
+    PluginCall pluginCall,
+    String code,
+    String clientSecret,
+    String nonce
+  ) {
     FormBody formBody = new FormBody.Builder()
       .add("grant_type", "authorization_code")
       .add("code", code)
@@ -314,76 +504,158 @@ public class AppleProvider implements SocialProvider {
       .post(formBody)
       .build();
 
-    client
-      .newCall(request)
-      .enqueue(
-        new Callback() {
-          @Override
-          public void onFailure(@NonNull Call call, @NonNull IOException e) {
-            AppleProvider.this.lastcall.reject("Cannot get access_token", e);
-            AppleProvider.this.lastcall = null;
-          }
+    tokenClient.enqueueNonIdempotent(
+      request,
+      new Callback() {
+        @Override
+        public void onFailure(@NonNull Call call, @NonNull IOException e) {
+          metrics.fail();
+          pluginCall.reject("Cannot get access_token", e);
+        }
 
-          @Override
-          public void onResponse(
-            @NonNull Call call,
-            @NonNull Response response
-          ) throws IOException {
-            try {
-              if (!response.isSuccessful()) throw new IOException(
-                "Unexpected code " + response
-              );
-
-              String responseData = Objects.requireNonNull(
-                response.body()
-              ).string();
-              JSONObject jsonObject = (JSONObject) new JSONTokener(
-                responseData
-              ).nextValue();
-              String accessToken = jsonObject.getString("access_token");
-              String refreshToken = jsonObject.getString("refresh_token");
-              String idToken = jsonObject.getString("id_token");
-
-              persistState(idToken, refreshToken, accessToken);
-              AppleProvider.this.lastcall.resolve(
-                  new JSObject()
-                    .put("provider", "apple")
-                    .put("result", new JSObject().put("identityToken", idToken))
-                );
-              AppleProvider.this.lastcall = null;
-            } catch (Exception e) {
-              AppleProvider.this.lastcall.reject("Cannot get access_token", e);
-              AppleProvider.this.lastcall = null;
-            } finally {
-              response.close();
-            }
+        @Override
+        public void onResponse(
+          @NonNull Call call,
+          @NonNull Response response
+        ) throws IOException {
+          try {
+            TokenResponseParser.TokenResponse tokens =
+              TokenResponseParser.parse(response);
+            String accessToken = tokens.accessToken;
+            // Not sent when the app did not request offline access
+            String refreshToken = tokens.refreshToken;
+            String idToken = tokens.idToken;
+            metrics.mark(LoginMetrics.Phase.TOKEN_EXCHANGED);
+            JwtClaims claims = idTokenVerifier.verify(idToken, nonce);
+            AppleProvider.this.profile = createProfileObject(claims);
+
+            persistState(
+              idToken,
+              refreshToken,
+              accessToken,
+              clientSecret,
+              AuthStateNotifier.REASON_LOGIN
+            );
+            metrics.mark(LoginMetrics.Phase.RESOLVED);
+            pluginCall.resolve(
+              new JSObject()
+                .put("provider", "apple")
+                .put("result", new JSObject().put("identityToken", idToken))
+            );
+          } catch (Exception e) {
+            metrics.fail();
+            pluginCall.reject("Cannot get access_token", e);
+          } finally {
+            response.close();
           }
         }
-      );
+      }
+    );
   }
 
   private void persistState(
     String idToken,
     String refreshToken,
-    String accessToken
-  ) throws JSONException {
-    JSONObject object = new JSONObject();
-    object.put("idToken", idToken);
-    object.put("refreshToken", refreshToken);
-    object.put("accessToken", accessToken);
-
-    AppleProvider.this.idToken = idToken;
-    AppleProvider.this.refreshToken = refreshToken;
-    AppleProvider.this.accessToken = accessToken;
-
-    activity
-      .getSharedPreferences(SHARED_PREFERENCE_NAME, Context.MODE_PRIVATE)
-      .edit()
-      .putString(APPLE_DATA_PREFERENCE, object.toString())
-      .apply();
+    String accessToken,
+    String clientSecret,
+    String reason
+  ) {
+    Map<String, String> values = new HashMap<>();
+    values.put("idToken", idToken);
+    values.put("refreshToken", refreshToken);
+    values.put("accessToken", accessToken);
+
+    AppleProvider.this.session = SessionSnapshot.fromIdToken(
+      idToken,
+      accessToken,
+      refreshToken
+    );
+    AppleProvider.this.clientSecret = clientSecret;
+
+    tokenStore.put(TOKEN_STORE_NAMESPACE, values);
+    authState.publish(this.session, reason);
   }
 
-  public CustomTabsSession getCustomTabsSession() {
+  /**
+   * Bind to the Custom Tabs service so the browser is warm and the sign-in
+   * page for the default options is already loading before login is called.
+   */
+  public synchronized void prepareLogin() {
+    if (preparedAuthUrl == null) {
+      preparedAuthUrl = buildAuthUrl(
+        DEFAULT_SCOPE,
+        UUID.randomUUID().toString(),
+        null
+      );
+    }
+    if (customTabsBound) {
+      mayLaunchPreparedUrl();
+      return;
+    }
+    String packageName = CustomTabsClient.getPackageName(context, null);
+    if (packageName == null) {
+      Log.i(LOG_TAG, "No browser supports Custom Tabs, cannot pre-warm");
+      return;
+    }
+    customTabsBound = CustomTabsClient.bindCustomTabsService(
+      context.getApplicationContext(),
+      packageName,
+      connection
+    );
+  }
+
+  @Override
+  public synchronized void dispose() {
+    if (customTabsBound) {
+      context.getApplicationContext().unbindService(connection);
+      customTabsBound = false;
+    }
+    customTabsClient = null;
+    currentSession = null;
+  }
+
+  private void mayLaunchPreparedUrl() {
+    CustomTabsSession session = getCustomTabsSession();
+    if (session != null && preparedAuthUrl != null) {
+      session.mayLaunchUrl(Uri.parse(preparedAuthUrl), null, null);
+    }
+  }
+
+  /**
+   * Auth URL for this login. The prefetched URL is used when the options
+   * match it. Its state is single use, the next one is prepared once this
+   * login is over so the warm-up does not compete with the current page.
+   */
+  private synchronized String takeAuthUrl(String scopes, String nonce) {
+    if (
+      DEFAULT_SCOPE.equals(scopes) && nonce == null && preparedAuthUrl != null
+    ) {
+      String url = preparedAuthUrl;
+      preparedAuthUrl = null;
+      return url;
+    }
+    return buildAuthUrl(scopes, UUID.randomUUID().toString(), nonce);
+  }
+
+  private String buildAuthUrl(String scopes, String state, String nonce) {
+    String url =
+      AUTHURL +
+      "?client_id=" +
+      this.clientId +
+      "&redirect_uri=" +
+      this.redirectUrl +
+      "&response_type=code&scope=" +
+      scopes +
+      "&response_mode=form_post&state=" +
+      state;
+
+    if (nonce != null) {
+      url += "&nonce=" + nonce;
+    }
+    return url;
+  }
+
+  public synchronized CustomTabsSession getCustomTabsSession() {
     if (customTabsClient == null) {
       return null;
     }
@@ -406,44 +678,35 @@ public class AppleProvider implements SocialProvider {
     );
 
     builder.build().launchUrl(context, Uri.parse(url));
+    metrics.mark(LoginMetrics.Phase.UI_LAUNCHED);
   }
 
   private JSObject createAccessTokenObject(String accessToken) {
-    JSObject tokenObject = new JSObject();
-    tokenObject.put("token", accessToken);
-    // Add other fields if available
-    return tokenObject;
+    return createAccessTokenObject(accessToken, -1);
   }
 
-  private JSObject createProfileObject(String idToken) {
-    JSObject profileObject = new JSObject();
-    // Parse the ID token to extract user information
-    // This is a simplified example. In practice, you should properly decode and verify the JWT.
-    String[] parts = idToken.split("\\.");
-    if (parts.length == 3) {
-      try {
-        String payload = new String(
-          android.util.Base64.decode(parts[1], android.util.Base64.URL_SAFE)
-        );
-        JSONObject claims = new JSONObject(payload);
-        profileObject.put("user", claims.optString("sub"));
-        profileObject.put("email", claims.optString("email"));
-        // Apple doesn't provide given name and family name in the ID token
-        profileObject.put("givenName", JSONObject.NULL);
-        profileObject.put("familyName", JSONObject.NULL);
-      } catch (JSONException e) {
-        Log.e(LOG_TAG, "Error parsing ID token", e);
-      }
+  private JSObject createAccessTokenObject(
+    String accessToken,
+    long expiresInSeconds
+  ) {
+    try {
+      return AppleLoginResponse.putAccessToken(
+        new JSObject(),
+        accessToken,
+        expiresInSeconds
+      );
+    } catch (JSONException e) {
+      // JSObject.put does not throw
+      throw new IllegalStateException(e);
     }
-    return profileObject;
   }
 
-  // Helper method to convert JSONArray to String array
-  private String[] toStringArray(JSONArray array) throws JSONException {
-    String[] stringArray = new String[array.length()];
-    for (int i = 0; i < array.length(); i++) {
-      stringArray[i] = array.getString(i);
+  private JSObject createProfileObject(JwtClaims claims) {
+    try {
+      return AppleLoginResponse.putProfile(new JSObject(), claims);
+    } catch (JSONException e) {
+      // JSObject.put does not throw
+      throw new IllegalStateException(e);
     }
-    return stringArray;
   }
 }
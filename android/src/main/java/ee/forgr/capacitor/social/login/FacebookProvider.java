@@ -3,36 +3,84 @@ package ee.forgr.capacitor.social.login;
 import android.app.Activity;
 import android.content.Intent;
 import android.os.Bundle;
+import android.text.TextUtils;
 import android.util.Log;
 import androidx.activity.result.ActivityResultRegistryOwner;
 import com.facebook.AccessToken;
+import com.facebook.AccessTokenTracker;
 import com.facebook.CallbackManager;
 import com.facebook.FacebookCallback;
 import com.facebook.FacebookException;
 import com.facebook.FacebookSdk;
 import com.facebook.GraphRequest;
-import com.facebook.GraphResponse;
+import com.facebook.GraphRequestBatch;
+import com.facebook.Profile;
+import com.facebook.ProfileTracker;
 import com.facebook.login.LoginBehavior;
 import com.facebook.login.LoginManager;
 import com.facebook.login.LoginResult;
 import com.getcapacitor.JSArray;
 import com.getcapacitor.JSObject;
 import com.getcapacitor.PluginCall;
+import ee.forgr.capacitor.social.login.helpers.AuthExecutor;
+import ee.forgr.capacitor.social.login.helpers.AuthStateNotifier;
 import ee.forgr.capacitor.social.login.helpers.JsonHelper;
+import ee.forgr.capacitor.social.login.helpers.LoginMetrics;
+import ee.forgr.capacitor.social.login.helpers.RefreshCallback;
+import ee.forgr.capacitor.social.login.helpers.SessionSnapshot;
 import ee.forgr.capacitor.social.login.helpers.SocialProvider;
+import ee.forgr.capacitor.social.login.helpers.TtlCache;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 public class FacebookProvider implements SocialProvider {
 
   private static final String LOG_TAG = "FacebookProvider";
+  private static final long PROFILE_CACHE_TTL_MS = 15 * 60 * 1000;
+  private static final List<String> DEFAULT_PROFILE_FIELDS = Arrays.asList(
+    "id",
+    "name",
+    "email",
+    "picture.type(large)"
+  );
 
-  private Activity activity;
+  private final TtlCache<String, JSObject> profileCache = new TtlCache<>(
+    PROFILE_CACHE_TTL_MS
+  );
+
+  private final Activity activity;
+  private final AuthExecutor executor;
+  private final LoginMetrics.Recorder metrics;
+  private final AuthStateNotifier.Channel authState;
+  private AccessTokenTracker accessTokenTracker;
+  private ProfileTracker profileTracker;
+  // 0 until the SDK profile changes in this process, its age is unknown
+  private volatile long sdkProfileChangedAt;
   private CallbackManager callbackManager;
+  private volatile SessionSnapshot session = SessionSnapshot.EMPTY;
+  private volatile String profileFields = TextUtils.join(
+    ",",
+    DEFAULT_PROFILE_FIELDS
+  );
+  private final Object refreshLock = new Object();
+  private final List<RefreshCallback> refreshWaiters = new ArrayList<>();
 
-  public FacebookProvider(Activity activity) {
+  public FacebookProvider(
+    Activity activity,
+    AuthExecutor executor,
+    LoginMetrics.Recorder metrics,
+    AuthStateNotifier.Channel authState
+  ) {
     this.activity = activity;
+    this.executor = executor;
+    this.metrics = metrics;
+    this.authState = authState;
   }
 
   public void initialize(JSONObject config) {
@@ -49,6 +97,29 @@ public class FacebookProvider implements SocialProvider {
       FacebookSdk.sdkInitialize(activity.getApplicationContext());
 
       this.callbackManager = CallbackManager.Factory.create();
+      this.session = createSession(AccessToken.getCurrentAccessToken(), null);
+      authState.track(this.session);
+      // The SDK reports every change of the current token: login, refresh
+      // (including the ones it does by itself) and logout
+      this.accessTokenTracker = new AccessTokenTracker() {
+        @Override
+        protected void onCurrentAccessTokenChanged(
+          AccessToken oldAccessToken,
+          AccessToken currentAccessToken
+        ) {
+          onAccessTokenChanged(oldAccessToken, currentAccessToken);
+        }
+      };
+      // The SDK's Profile carries no date, its changes are timed here
+      this.profileTracker = new ProfileTracker() {
+        @Override
+        protected void onCurrentProfileChanged(
+          Profile oldProfile,
+          Profile currentProfile
+        ) {
+          sdkProfileChangedAt = System.currentTimeMillis();
+        }
+      };
 
       LoginManager.getInstance()
         .registerCallback(
@@ -80,12 +151,21 @@ public class FacebookProvider implements SocialProvider {
 
   @Override
   public void login(PluginCall call, JSONObject config) {
+    metrics.start();
     try {
       Collection<String> permissions = JsonHelper.jsonArrayToList(
         config.getJSONArray("permissions")
       );
       boolean limitedLogin = config.optBoolean("limitedLogin", false);
       String nonce = config.optString("nonce", "");
+      JSONArray fieldsArray = config.optJSONArray("profileFields");
+      List<String> fields = fieldsArray != null && fieldsArray.length() > 0
+        ? JsonHelper.jsonArrayToList(fieldsArray)
+        : DEFAULT_PROFILE_FIELDS;
+      JSONArray edgesArray = config.optJSONArray("profileEdges");
+      List<String> edges = edgesArray != null
+        ? JsonHelper.jsonArrayToList(edgesArray)
+        : Collections.emptyList();
 
       LoginManager.getInstance()
         .registerCallback(
@@ -94,10 +174,16 @@ public class FacebookProvider implements SocialProvider {
             @Override
             public void onSuccess(LoginResult loginResult) {
               Log.d(LOG_TAG, "LoginManager.onSuccess");
+              metrics.mark(LoginMetrics.Phase.CREDENTIAL_RETURNED);
               AccessToken accessToken = loginResult.getAccessToken();
+              FacebookProvider.this.session = createSession(
+                accessToken,
+                loginResult.getAuthenticationToken() != null
+                  ? loginResult.getAuthenticationToken().getToken()
+                  : null
+              );
               JSObject result = new JSObject();
               result.put("accessToken", createAccessTokenObject(accessToken));
-              result.put("profile", createProfileObject(accessToken));
               result.put(
                 "idToken",
                 loginResult.getAuthenticationToken() != null
@@ -105,22 +191,58 @@ public class FacebookProvider implements SocialProvider {
                   : null
               );
 
-              JSObject response = new JSObject();
-              response.put("provider", "facebook");
-              response.put("result", result);
+              fetchProfile(
+                accessToken,
+                fields,
+                edges,
+                new ProfileCallback() {
+                  @Override
+                  public void onProfile(
+                    JSObject profile,
+                    JSObject graph,
+                    List<String> missingFields,
+                    JSObject missingEdges
+                  ) {
+                    metrics.mark(LoginMetrics.Phase.PROFILE_FETCHED);
+                    result.put("profile", profile);
+                    if (graph != null) {
+                      result.put("edges", graph);
+                    }
+                    if (!missingFields.isEmpty()) {
+                      result.put("missingFields", new JSArray(missingFields));
+                    }
+                    if (missingEdges.length() > 0) {
+                      result.put("missingEdges", missingEdges);
+                    }
+
+                    JSObject response = new JSObject();
+                    response.put("provider", "facebook");
+                    response.put("result", result);
+
+                    metrics.mark(LoginMetrics.Phase.RESOLVED);
+                    call.resolve(response);
+                  }
 
-              call.resolve(response);
+                  @Override
+                  public void onError(String message) {
+                    metrics.fail();
+                    call.reject(message);
+                  }
+                }
+              );
             }
 
             @Override
             public void onCancel() {
               Log.d(LOG_TAG, "LoginManager.onCancel");
+              metrics.fail();
               call.reject("Login cancelled");
             }
 
             @Override
             public void onError(FacebookException exception) {
               Log.e(LOG_TAG, "LoginManager.onError", exception);
+              metrics.fail();
               call.reject(exception.getMessage());
             }
           }
@@ -146,7 +268,9 @@ public class FacebookProvider implements SocialProvider {
           permissions
         );
       }
+      metrics.mark(LoginMetrics.Phase.UI_LAUNCHED);
     } catch (JSONException e) {
+      metrics.fail();
       call.reject("Invalid login options format");
     }
   }
@@ -154,14 +278,16 @@ public class FacebookProvider implements SocialProvider {
   @Override
   public void logout(PluginCall call) {
     LoginManager.getInstance().logOut();
+    this.session = SessionSnapshot.EMPTY;
+    this.profileCache.clear();
     call.resolve();
   }
 
   @Override
   public void getAuthorizationCode(PluginCall call) {
-    AccessToken accessToken = AccessToken.getCurrentAccessToken();
-    if (accessToken != null && !accessToken.isExpired()) {
-      call.resolve(new JSObject().put("code", accessToken.getToken()));
+    SessionSnapshot session = this.session;
+    if (session.isLoggedIn()) {
+      call.resolve(new JSObject().put("code", session.getAccessToken()));
     } else {
       call.reject("No valid access token found");
     }
@@ -169,17 +295,155 @@ public class FacebookProvider implements SocialProvider {
 
   @Override
   public void isLoggedIn(PluginCall call) {
+    call.resolve(new JSObject().put("isLoggedIn", this.session.isLoggedIn()));
+  }
+
+  @Override
+  public SessionSnapshot getSession() {
+    return this.session;
+  }
+
+  @Override
+  public JSObject getCachedProfile() {
+    String userId = this.session.getSubject();
+    return userId != null
+      ? profileCache.get(profileCacheKey(userId, this.profileFields))
+      : null;
+  }
+
+  @Override
+  public boolean canRefreshSession() {
     AccessToken accessToken = AccessToken.getCurrentAccessToken();
-    call.resolve(
-      new JSObject()
-        .put("isLoggedIn", accessToken != null && !accessToken.isExpired())
+    return accessToken != null && !accessToken.isDataAccessExpired();
+  }
+
+  /**
+   * Extend the current token through the SDK. Once data access has expired
+   * only a new login can restore it, so that case fails without a request.
+   * Concurrent refreshes share one request; the session itself is updated by
+   * the access token tracker.
+   */
+  @Override
+  public void refreshSession(RefreshCallback callback) {
+    AccessToken current = AccessToken.getCurrentAccessToken();
+    if (current == null) {
+      callback.onFailure("Not logged in to facebook; Cannot refresh", null);
+      return;
+    }
+    if (current.isDataAccessExpired()) {
+      callback.onFailure(
+        "Facebook data access expired, a new login is required",
+        null
+      );
+      return;
+    }
+
+    synchronized (refreshLock) {
+      refreshWaiters.add(callback);
+      if (refreshWaiters.size() > 1) {
+        Log.d(LOG_TAG, "Refresh already in flight, joining it");
+        return;
+      }
+    }
+
+    AccessToken.refreshCurrentAccessTokenAsync(
+      new AccessToken.AccessTokenRefreshCallback() {
+        @Override
+        public void OnTokenRefreshed(AccessToken accessToken) {
+          if (accessToken == null) {
+            completeRefresh(null, "Cannot refresh facebook token", null);
+            return;
+          }
+          SessionSnapshot session = FacebookProvider.this.session;
+          JSObject result = new JSObject();
+          result.put("accessToken", createAccessTokenObject(accessToken));
+          result.put(
+            "idToken",
+            accessToken.getUserId().equals(session.getSubject())
+              ? session.getIdToken()
+              : null
+          );
+          completeRefresh(result, null, null);
+        }
+
+        @Override
+        public void OnTokenRefreshFailed(FacebookException exception) {
+          completeRefresh(null, "Cannot refresh facebook token", exception);
+        }
+      }
     );
   }
 
   @Override
   public void refresh(PluginCall call) {
-    // Not implemented for Facebook
-    call.reject("Not implemented");
+    refreshSession(
+      new RefreshCallback() {
+        @Override
+        public void onRefreshed(JSObject result) {
+          call.resolve(
+            new JSObject().put("provider", "facebook").put("result", result)
+          );
+        }
+
+        @Override
+        public void onFailure(String message, Exception e) {
+          call.reject(message, e);
+        }
+      }
+    );
+  }
+
+  private void completeRefresh(
+    JSObject result,
+    String errorMessage,
+    Exception error
+  ) {
+    List<RefreshCallback> waiters;
+    synchronized (refreshLock) {
+      waiters = new ArrayList<>(refreshWaiters);
+      refreshWaiters.clear();
+    }
+    for (RefreshCallback waiter : waiters) {
+      if (result != null) {
+        waiter.onRefreshed(result);
+      } else {
+        waiter.onFailure(errorMessage, error);
+      }
+    }
+  }
+
+  private void onAccessTokenChanged(
+    AccessToken oldAccessToken,
+    AccessToken currentAccessToken
+  ) {
+    String reason;
+    if (currentAccessToken == null) {
+      reason = AuthStateNotifier.REASON_LOGOUT;
+    } else if (
+      oldAccessToken == null ||
+      !oldAccessToken.getUserId().equals(currentAccessToken.getUserId())
+    ) {
+      reason = AuthStateNotifier.REASON_LOGIN;
+    } else {
+      reason = AuthStateNotifier.REASON_REFRESH;
+    }
+    SessionSnapshot current = this.session;
+    String idToken = currentAccessToken != null &&
+      currentAccessToken.getUserId().equals(current.getSubject())
+      ? current.getIdToken()
+      : null;
+    this.session = createSession(currentAccessToken, idToken);
+    authState.publish(this.session, reason);
+  }
+
+  @Override
+  public void dispose() {
+    if (accessTokenTracker != null) {
+      accessTokenTracker.stopTracking();
+    }
+    if (profileTracker != null) {
+      profileTracker.stopTracking();
+    }
   }
 
   public boolean handleOnActivityResult(
@@ -194,6 +458,28 @@ public class FacebookProvider implements SocialProvider {
     return false;
   }
 
+  private static SessionSnapshot createSession(
+    AccessToken accessToken,
+    String idToken
+  ) {
+    if (accessToken == null) {
+      return SessionSnapshot.EMPTY;
+    }
+    // Past data access expiration the token is useless until a new login
+    long expiresAt = Math.min(
+      accessToken.getExpires().getTime(),
+      accessToken.getDataAccessExpirationTime().getTime()
+    );
+    return new SessionSnapshot(
+      idToken,
+      accessToken.getToken(),
+      null,
+      expiresAt,
+      accessToken.getLastRefresh().getTime(),
+      accessToken.getUserId()
+    );
+  }
+
   private JSObject createAccessTokenObject(AccessToken accessToken) {
     JSObject tokenObject = new JSObject();
     tokenObject.put("applicationId", accessToken.getApplicationId());
@@ -204,46 +490,243 @@ public class FacebookProvider implements SocialProvider {
     tokenObject.put("expires", accessToken.getExpires().getTime());
     tokenObject.put("isExpired", accessToken.isExpired());
     tokenObject.put("lastRefresh", accessToken.getLastRefresh().getTime());
+    tokenObject.put(
+      "dataAccessExpirationTime",
+      accessToken.getDataAccessExpirationTime().getTime()
+    );
+    tokenObject.put("isDataAccessExpired", accessToken.isDataAccessExpired());
     tokenObject.put("permissions", new JSArray(accessToken.getPermissions()));
     tokenObject.put("token", accessToken.getToken());
     tokenObject.put("userId", accessToken.getUserId());
     return tokenObject;
   }
 
-  private JSObject createProfileObject(AccessToken accessToken) {
-    JSObject profileObject = new JSObject();
-    GraphRequest request = GraphRequest.newMeRequest(
-      accessToken,
-      new GraphRequest.GraphJSONObjectCallback() {
-        @Override
-        public void onCompleted(JSONObject object, GraphResponse response) {
-          if (response.getError() != null) {
+  private interface ProfileCallback {
+    /**
+     * @param missingFields requested fields the Graph API did not return,
+     *     usually because their permission was not granted
+     * @param missingEdges Graph error message of each edge that failed
+     */
+    void onProfile(
+      JSObject profile,
+      JSObject edges,
+      List<String> missingFields,
+      JSObject missingEdges
+    );
+
+    void onError(String message);
+  }
+
+  /**
+   * Fill the requested profile fields, cheapest source first: the profile
+   * cache, then the SDK's current {@link Profile} for the fields it holds
+   * when it is no older than the cache TTL, and the Graph API for the rest.
+   * The remaining {@code /me} fields and the requested {@code /me/<edge>}
+   * reads go out as a single batch. A failed {@code /me} read fails the whole
+   * fetch, fields and edges that could not be read are reported to the
+   * callback. Only complete profiles are cached.
+   */
+  private void fetchProfile(
+    AccessToken accessToken,
+    List<String> fields,
+    List<String> edges,
+    ProfileCallback callback
+  ) {
+    String userId = accessToken.getUserId();
+    String fieldsParam = TextUtils.join(",", fields);
+    String cacheKey = profileCacheKey(userId, fieldsParam);
+    this.profileFields = fieldsParam;
+    JSObject cached = profileCache.get(cacheKey);
+    List<String> missingFields = new ArrayList<>();
+    JSObject missingEdges = new JSObject();
+    if (cached != null && edges.isEmpty()) {
+      callback.onProfile(cached, null, missingFields, missingEdges);
+      return;
+    }
+
+    JSObject profileObject = cached != null ? cached : new JSObject();
+    List<String> graphFields = new ArrayList<>();
+    if (cached == null) {
+      Profile current = freshSdkProfile(userId);
+      for (String field : fields) {
+        if (
+          current == null ||
+          !putSdkProfileField(profileObject, field, current)
+        ) {
+          graphFields.add(field);
+        }
+      }
+    }
+
+    List<GraphRequest> requests = new ArrayList<>();
+    String[] profileError = { null };
+    if (!graphFields.isEmpty()) {
+      GraphRequest meRequest = GraphRequest.newMeRequest(
+        accessToken,
+        (object, response) -> {
+          if (response.getError() != null || object == null) {
+            profileError[0] = response.getError() != null
+              ? response.getError().getErrorMessage()
+              : "empty response";
             Log.e(
               LOG_TAG,
               "Error fetching profile",
-              response.getError().getException()
+              response.getError() != null
+                ? response.getError().getException()
+                : null
             );
-          } else {
-            profileObject.put("userID", object.optString("id", ""));
-            profileObject.put("email", object.optString("email", ""));
-            profileObject.put("name", object.optString("name", ""));
-
-            JSONObject pictureObject = object.optJSONObject("picture");
-            if (pictureObject != null) {
-              JSONObject dataObject = pictureObject.optJSONObject("data");
-              if (dataObject != null) {
-                profileObject.put("imageURL", dataObject.optString("url", ""));
-              }
+            return;
+          }
+          for (String field : graphFields) {
+            if (!putGraphProfileField(profileObject, field, object)) {
+              missingFields.add(field);
             }
-            // Add other fields as needed
           }
         }
+      );
+      Bundle parameters = new Bundle();
+      parameters.putString("fields", TextUtils.join(",", graphFields));
+      meRequest.setParameters(parameters);
+      requests.add(meRequest);
+    }
+
+    JSObject edgesObject = edges.isEmpty() ? null : new JSObject();
+    for (String edge : edges) {
+      requests.add(
+        GraphRequest.newGraphPathRequest(
+          accessToken,
+          "me/" + edge,
+          response -> {
+            if (response.getError() != null) {
+              Log.w(
+                LOG_TAG,
+                "Error fetching edge " +
+                edge +
+                ": " +
+                response.getError().getErrorMessage()
+              );
+              missingEdges.put(edge, response.getError().getErrorMessage());
+            } else {
+              edgesObject.put(edge, response.getJSONObject());
+            }
+          }
+        )
+      );
+    }
+
+    if (requests.isEmpty()) {
+      profileCache.put(cacheKey, profileObject);
+      callback.onProfile(
+        profileObject,
+        edgesObject,
+        missingFields,
+        missingEdges
+      );
+      return;
+    }
+    GraphRequestBatch batch = new GraphRequestBatch(requests);
+    batch.addCallback(completed -> {
+      if (profileError[0] != null) {
+        callback.onError("Error fetching profile: " + profileError[0]);
+        return;
       }
-    );
-    Bundle parameters = new Bundle();
-    parameters.putString("fields", "id,name,email,picture.type(large)");
-    request.setParameters(parameters);
-    request.executeAndWait();
-    return profileObject;
+      if (missingFields.isEmpty()) {
+        profileCache.put(cacheKey, profileObject);
+      }
+      callback.onProfile(
+        profileObject,
+        edgesObject,
+        missingFields,
+        missingEdges
+      );
+    });
+    batch.executeAsync();
+  }
+
+  /**
+   * The SDK's current profile when it is this user's and changed within the
+   * profile cache TTL, null otherwise.
+   */
+  private Profile freshSdkProfile(String userId) {
+    Profile current = Profile.getCurrentProfile();
+    if (current == null || !userId.equals(current.getId())) {
+      return null;
+    }
+    long age = System.currentTimeMillis() - sdkProfileChangedAt;
+    return age < PROFILE_CACHE_TTL_MS ? current : null;
+  }
+
+  private static String profileCacheKey(String userId, String fields) {
+    return userId + "|" + fields;
+  }
+
+  // "picture.type(large)" is a projection of the picture field
+  private static String baseField(String field) {
+    int end = field.length();
+    for (char separator : new char[] { '.', '{', '(' }) {
+      int index = field.indexOf(separator);
+      if (index >= 0 && index < end) {
+        end = index;
+      }
+    }
+    return field.substring(0, end).trim();
+  }
+
+  private static boolean putSdkProfileField(
+    JSObject profileObject,
+    String field,
+    Profile profile
+  ) {
+    switch (baseField(field)) {
+      case "id":
+        profileObject.put("userID", profile.getId());
+        return true;
+      case "name":
+        profileObject.put("name", profile.getName());
+        return true;
+      case "first_name":
+        profileObject.put("first_name", profile.getFirstName());
+        return true;
+      case "middle_name":
+        profileObject.put("middle_name", profile.getMiddleName());
+        return true;
+      case "last_name":
+        profileObject.put("last_name", profile.getLastName());
+        return true;
+      default:
+        // Email is not kept by the SDK, and its picture URL embeds the token
+        return false;
+    }
+  }
+
+  /** Whether the Graph response held the field. */
+  private static boolean putGraphProfileField(
+    JSObject profileObject,
+    String field,
+    JSONObject object
+  ) {
+    String name = baseField(field);
+    switch (name) {
+      case "id":
+        profileObject.put("userID", object.optString("id", ""));
+        return object.has("id");
+      case "email":
+      case "name":
+        profileObject.put(name, object.optString(name, ""));
+        return object.has(name);
+      case "picture":
+        JSONObject pictureObject = object.optJSONObject("picture");
+        JSONObject dataObject = pictureObject != null
+          ? pictureObject.optJSONObject("data")
+          : null;
+        if (dataObject == null) {
+          return false;
+        }
+        profileObject.put("imageURL", dataObject.optString("url", ""));
+        return true;
+      default:
+        profileObject.put(name, object.opt(name));
+        return object.has(name);
+    }
   }
 }
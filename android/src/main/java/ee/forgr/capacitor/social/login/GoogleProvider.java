@@ -19,15 +19,28 @@ import com.getcapacitor.JSObject;
 import com.getcapacitor.PluginCall;
 import com.google.android.gms.auth.GoogleAuthException;
 import com.google.android.gms.auth.GoogleAuthUtil;
+import com.google.android.gms.auth.UserRecoverableAuthException;
+import com.google.android.libraries.identity.googleid.GetGoogleIdOption;
 import com.google.android.libraries.identity.googleid.GetSignInWithGoogleOption;
 import com.google.android.libraries.identity.googleid.GoogleIdTokenCredential;
+import ee.forgr.capacitor.social.login.helpers.AuthExecutor;
+import ee.forgr.capacitor.social.login.helpers.AuthStateNotifier;
+import ee.forgr.capacitor.social.login.helpers.IdTokenVerifier;
+import ee.forgr.capacitor.social.login.helpers.JwtClaims;
+import ee.forgr.capacitor.social.login.helpers.LoginMetrics;
+import ee.forgr.capacitor.social.login.helpers.RefreshCallback;
+import ee.forgr.capacitor.social.login.helpers.SessionSnapshot;
 import ee.forgr.capacitor.social.login.helpers.SocialProvider;
+import ee.forgr.capacitor.social.login.helpers.TokenStore;
+import ee.forgr.capacitor.social.login.helpers.TtlCache;
 import java.io.IOException;
-import java.util.concurrent.Callable;
-import java.util.concurrent.Executor;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.RejectedExecutionException;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -39,47 +52,100 @@ public class GoogleProvider implements SocialProvider {
     "GOOGLE_LOGIN_F13oz0I_SHARED_PERF";
   private static final String GOOGLE_DATA_PREFERENCE =
     "GOOGLE_LOGIN_GOOGLE_DATA_9158025e-947d-4211-ba51-40451630cc47";
+  private static final String TOKEN_STORE_NAMESPACE = "google";
+  // GoogleAuthUtil does not report the expiry, Google access tokens live for one hour
+  private static final long ACCESS_TOKEN_LIFETIME_MS = 60 * 60 * 1000;
+  private static final long ACCESS_TOKEN_EXPIRY_MARGIN_MS = 5 * 60 * 1000;
+  // Refresh keeps the current tokens when both outlive this margin
+  private static final long DEFAULT_REFRESH_MARGIN_MS = 10 * 60 * 1000;
+  private static final String[] DEFAULT_SCOPES = { "profile", "email" };
+  private static final String ID_TOKEN_SCOPE_PREFIX =
+    "audience:server:client_id:";
+  static final String SIGN_IN_PATH_SILENT = "silent";
+  static final String SIGN_IN_PATH_INTERACTIVE = "interactive";
+  static final String INTERACTION_REQUIRED =
+    "Interaction required: the Google session cannot be refreshed without " +
+    "the user, call login";
 
   private final Activity activity;
   private final Context context;
+  private final AuthExecutor executor;
+  private final TokenStore tokenStore;
+  private final LoginMetrics.Recorder metrics;
+  private final IdTokenVerifier idTokenVerifier;
+  private final AuthStateNotifier.Channel authState;
   private CredentialManager credentialManager;
   private String clientId;
   private String[] scopes;
 
-  private String idToken = null;
-
-  public GoogleProvider(Activity activity, Context context) {
+  private volatile SessionSnapshot session = SessionSnapshot.EMPTY;
+  private volatile JSObject profile;
+  private volatile AccessToken accessToken;
+  private final Object refreshLock = new Object();
+  private final List<RefreshCallback> refreshWaiters = new ArrayList<>();
+  private final TtlCache<String, AccessToken> accessTokenCache = new TtlCache<>(
+    ACCESS_TOKEN_LIFETIME_MS - ACCESS_TOKEN_EXPIRY_MARGIN_MS
+  );
+
+  public GoogleProvider(
+    Activity activity,
+    Context context,
+    AuthExecutor executor,
+    TokenStore tokenStore,
+    LoginMetrics.Recorder metrics,
+    IdTokenVerifier idTokenVerifier,
+    AuthStateNotifier.Channel authState
+  ) {
     this.activity = activity;
     this.context = context;
+    this.executor = executor;
+    this.tokenStore = tokenStore;
+    this.metrics = metrics;
+    this.idTokenVerifier = idTokenVerifier;
+    this.authState = authState;
   }
 
   public void initialize(String clientId) {
     this.credentialManager = CredentialManager.create(activity);
     this.clientId = clientId;
+    try {
+      executor.execute(idTokenVerifier::prefetchKeys);
+    } catch (RejectedExecutionException e) {
+      Log.w(LOG_TAG, "Cannot prefetch google signing keys", e);
+    }
 
-    String data = context
-      .getSharedPreferences(SHARED_PREFERENCE_NAME, Context.MODE_PRIVATE)
-      .getString(GOOGLE_DATA_PREFERENCE, null);
+    Map<String, String> data = LegacyTokenMigration.restore(
+      context,
+      tokenStore,
+      TOKEN_STORE_NAMESPACE,
+      SHARED_PREFERENCE_NAME,
+      GOOGLE_DATA_PREFERENCE
+    );
 
-    if (data == null || data.isEmpty()) {
+    if (data.isEmpty()) {
       Log.i(SocialLoginPlugin.LOG_TAG, "No data to restore for google login");
       return;
     }
-    try {
-      JSONObject object = new JSONObject(data);
-      GoogleProvider.this.idToken = object.optString("idToken", null);
-
-      Log.i(
-        SocialLoginPlugin.LOG_TAG,
-        String.format("Google restoreState: %s", object)
-      );
-    } catch (JSONException e) {
-      Log.e(
-        SocialLoginPlugin.LOG_TAG,
-        "Google restoreState: Failed to parse JSON",
-        e
+    GoogleProvider.this.session = SessionSnapshot.fromIdToken(
+      data.get("idToken"),
+      data.get("accessToken"),
+      null
+    );
+    String storedScopes = data.get("scopes");
+    if (storedScopes != null) {
+      this.scopes = storedScopes.split(" ");
+    }
+    AccessToken storedToken = AccessToken.fromStored(data);
+    if (storedToken != null && this.scopes != null) {
+      this.accessToken = storedToken;
+      accessTokenCache.putUntil(
+        accessTokenCacheKey(storedToken.userId, this.scopes),
+        storedToken,
+        storedToken.expires - ACCESS_TOKEN_EXPIRY_MARGIN_MS
       );
     }
+    authState.track(this.session);
+    Log.i(SocialLoginPlugin.LOG_TAG, "Google restoreState: session restored");
   }
 
   @Override
@@ -89,7 +155,11 @@ public class GoogleProvider implements SocialProvider {
       return;
     }
 
+    metrics.start();
     String nonce = call.getString("nonce");
+    if (nonce == null) {
+      nonce = config.optString("nonce", null);
+    }
 
     // Extract scopes from the config
     JSONArray scopesArray = config.optJSONArray("scopes");
@@ -100,26 +170,36 @@ public class GoogleProvider implements SocialProvider {
       }
     } else {
       // Default scopes if not provided
-      this.scopes = new String[] { "profile", "email" };
+      this.scopes = DEFAULT_SCOPES;
     }
 
-    GetSignInWithGoogleOption.Builder googleIdOptionBuilder =
-      new GetSignInWithGoogleOption.Builder(this.clientId);
-
-    if (nonce != null && !nonce.isEmpty()) {
-      googleIdOptionBuilder.setNonce(nonce);
-    }
+    String expectedNonce = nonce != null && !nonce.isEmpty() ? nonce : null;
+    String path = config.optBoolean("forcePrompt", false)
+      ? SIGN_IN_PATH_INTERACTIVE
+      : SIGN_IN_PATH_SILENT;
+    requestCredential(call, path, expectedNonce);
+  }
 
-    GetSignInWithGoogleOption googleIdOptionFiltered =
-      googleIdOptionBuilder.build();
-    GetCredentialRequest filteredRequest = new GetCredentialRequest.Builder()
-      .addCredentialOption(googleIdOptionFiltered)
+  /**
+   * The silent path only offers accounts that already authorized the app and
+   * picks the single one without UI. When there is none, the interactive
+   * Sign in with Google flow takes over. Each attempt marks UI_LAUNCHED, so
+   * CREDENTIAL_RETURNED only measures the one that returned.
+   */
+  private void requestCredential(PluginCall call, String path, String nonce) {
+    GetCredentialRequest request = new GetCredentialRequest.Builder()
+      .addCredentialOption(
+        SIGN_IN_PATH_SILENT.equals(path)
+          ? buildAuthorizedAccountOption(nonce)
+          : buildSignInWithGoogleOption(nonce)
+      )
       .build();
 
-    Executor executor = Executors.newSingleThreadExecutor();
+    // Marked first, the callback can run before getCredentialAsync returns
+    metrics.mark(LoginMetrics.Phase.UI_LAUNCHED);
     credentialManager.getCredentialAsync(
       context,
-      filteredRequest,
+      request,
       null,
       executor,
       new CredentialManagerCallback<
@@ -128,39 +208,83 @@ public class GoogleProvider implements SocialProvider {
       >() {
         @Override
         public void onResult(GetCredentialResponse result) {
-          handleSignInResult(result, call);
+          metrics.mark(LoginMetrics.Phase.CREDENTIAL_RETURNED);
+          metrics.recordPath(path);
+          handleSignInResult(result, call, nonce, path);
         }
 
         @Override
         public void onError(GetCredentialException e) {
+          if (
+            e instanceof NoCredentialException &&
+            SIGN_IN_PATH_SILENT.equals(path)
+          ) {
+            Log.d(LOG_TAG, "No authorized google account, showing sign-in UI");
+            requestCredential(call, SIGN_IN_PATH_INTERACTIVE, nonce);
+            return;
+          }
           handleSignInError(e, call);
         }
       }
     );
   }
 
-  private void persistState(String idToken) throws JSONException {
-    JSONObject object = new JSONObject();
-    object.put("idToken", idToken);
+  private GetGoogleIdOption buildAuthorizedAccountOption(String nonce) {
+    GetGoogleIdOption.Builder builder = new GetGoogleIdOption.Builder()
+      .setServerClientId(this.clientId)
+      .setFilterByAuthorizedAccounts(true)
+      .setAutoSelectEnabled(true);
+    if (nonce != null) {
+      builder.setNonce(nonce);
+    }
+    return builder.build();
+  }
 
-    GoogleProvider.this.idToken = idToken;
+  private GetSignInWithGoogleOption buildSignInWithGoogleOption(String nonce) {
+    GetSignInWithGoogleOption.Builder builder =
+      new GetSignInWithGoogleOption.Builder(this.clientId);
+    if (nonce != null) {
+      builder.setNonce(nonce);
+    }
+    return builder.build();
+  }
 
-    activity
-      .getSharedPreferences(SHARED_PREFERENCE_NAME, Context.MODE_PRIVATE)
-      .edit()
-      .putString(GOOGLE_DATA_PREFERENCE, object.toString())
-      .apply();
+  private void persistState(
+    String idToken,
+    AccessToken accessToken,
+    String reason
+  ) {
+    Map<String, String> values = new HashMap<>();
+    values.put("idToken", idToken);
+    values.put("accessToken", accessToken.token);
+    values.put("accountId", accessToken.userId);
+    values.put("accessTokenIssuedAt", Long.toString(accessToken.issuedAt));
+    values.put("accessTokenExpires", Long.toString(accessToken.expires));
+    values.put("scopes", TextUtils.join(" ", this.scopes));
+
+    GoogleProvider.this.session = SessionSnapshot.fromIdToken(
+      idToken,
+      accessToken.token,
+      null
+    );
+    GoogleProvider.this.accessToken = accessToken;
+
+    tokenStore.put(TOKEN_STORE_NAMESPACE, values);
+    authState.publish(this.session, reason);
   }
 
   private void handleSignInResult(
     GetCredentialResponse result,
-    PluginCall call
+    PluginCall call,
+    String nonce,
+    String path
   ) {
     try {
       JSObject user = handleSignInResult(result);
       JSObject response = new JSObject();
       response.put("provider", "google");
       JSObject resultObj = new JSObject();
+      resultObj.put("signInPath", path);
 
       Credential credential = result.getCredential();
       if (credential instanceof CustomCredential) {
@@ -172,63 +296,84 @@ public class GoogleProvider implements SocialProvider {
           GoogleIdTokenCredential googleIdTokenCredential =
             GoogleIdTokenCredential.createFrom(credential.getData());
           String idToken = googleIdTokenCredential.getIdToken();
+          try {
+            idTokenVerifier.verify(idToken, nonce);
+          } catch (IdTokenVerifier.VerificationException e) {
+            metrics.fail();
+            call.reject("Id token verification failed: " + e.getMessage(), e);
+            return;
+          }
           resultObj.put("idToken", idToken);
-          persistState(idToken);
-
-          // Use ExecutorService to retrieve the access token
-          ExecutorService executor = Executors.newSingleThreadExecutor();
-          Future<AccessToken> future = executor.submit(
-            new Callable<AccessToken>() {
-              @Override
-              public AccessToken call() throws Exception {
-                return getAccessToken(googleIdTokenCredential);
-              }
-            }
-          );
 
-          executor.execute(
-            new Runnable() {
-              @Override
-              public void run() {
-                try {
-                  AccessToken accessToken = future.get();
-                  if (accessToken != null) {
-                    JSObject accessTokenObj = new JSObject();
-                    accessTokenObj.put("token", accessToken.token);
-                    accessTokenObj.put("userId", accessToken.userId);
-
-                    resultObj.put("accessToken", accessTokenObj);
-                    resultObj.put("profile", user);
-                    response.put("result", resultObj);
-                    call.resolve(response);
-                  } else {
-                    call.reject("Failed to get access token");
-                  }
-                } catch (Exception e) {
-                  call.reject(
-                    "Error retrieving access token: " + e.getMessage()
+          GoogleProvider.this.profile = user;
+          resultObj.put("profile", user);
+          response.put("result", resultObj);
+
+          String cacheKey = accessTokenCacheKey(
+            googleIdTokenCredential.getId(),
+            this.scopes
+          );
+          AccessToken cachedToken = accessTokenCache.get(cacheKey);
+          if (cachedToken != null) {
+            persistState(idToken, cachedToken, AuthStateNotifier.REASON_LOGIN);
+            resultObj.put("accessToken", cachedToken.toJSObject());
+            metrics.mark(LoginMetrics.Phase.RESOLVED);
+            call.resolve(response);
+            return;
+          }
+
+          // GoogleAuthUtil.getToken is blocking, run it on the auth executor
+          try {
+            executor.execute(() -> {
+              try {
+                AccessToken accessToken = getAccessToken(
+                  googleIdTokenCredential.getId()
+                );
+                if (accessToken != null) {
+                  metrics.mark(LoginMetrics.Phase.TOKEN_EXCHANGED);
+                  accessTokenCache.putUntil(
+                    cacheKey,
+                    accessToken,
+                    accessToken.expires - ACCESS_TOKEN_EXPIRY_MARGIN_MS
                   );
-                } finally {
-                  executor.shutdown();
+                  persistState(
+                    idToken,
+                    accessToken,
+                    AuthStateNotifier.REASON_LOGIN
+                  );
+                  resultObj.put("accessToken", accessToken.toJSObject());
+                  metrics.mark(LoginMetrics.Phase.RESOLVED);
+                  call.resolve(response);
+                } else {
+                  metrics.fail();
+                  call.reject("Failed to get access token");
                 }
+              } catch (Exception e) {
+                metrics.fail();
+                call.reject("Error retrieving access token: " + e.getMessage());
               }
-            }
-          );
+            });
+          } catch (RejectedExecutionException e) {
+            metrics.fail();
+            call.reject("Error retrieving access token: executor is busy");
+          }
 
-          return; // The call will be resolved in the Runnable
+          return; // The call will be resolved on the auth executor
         }
       }
 
       // If we reach here, something went wrong
+      metrics.fail();
       call.reject("Failed to get Google credentials");
     } catch (Exception e) {
+      metrics.fail();
       call.reject("Error handling sign-in result: " + e.getMessage());
     }
   }
 
-  private AccessToken getAccessToken(GoogleIdTokenCredential credential) {
+  private AccessToken getAccessToken(String accountId) {
     try {
-      Account account = new Account(credential.getId(), "com.google");
+      Account account = new Account(accountId, "com.google");
       String scopesString = "oauth2:" + TextUtils.join(" ", this.scopes);
       String token = GoogleAuthUtil.getToken(
         this.context,
@@ -238,8 +383,9 @@ public class GoogleProvider implements SocialProvider {
 
       AccessToken accessToken = new AccessToken();
       accessToken.token = token;
-      accessToken.userId = credential.getId();
-      // Note: We don't have exact expiration time, so we're not setting it here
+      accessToken.userId = accountId;
+      accessToken.issuedAt = System.currentTimeMillis();
+      accessToken.expires = accessToken.issuedAt + ACCESS_TOKEN_LIFETIME_MS;
 
       return accessToken;
     } catch (IOException | GoogleAuthException e) {
@@ -248,8 +394,28 @@ public class GoogleProvider implements SocialProvider {
     }
   }
 
+  // Same account and same set of scopes (in any order) share a cache entry
+  private static String accessTokenCacheKey(String accountId, String[] scopes) {
+    Set<String> normalized = new TreeSet<>();
+    for (String scope : scopes) {
+      if (scope != null && !scope.trim().isEmpty()) {
+        normalized.add(scope.trim());
+      }
+    }
+    return accountId + "|" + TextUtils.join(" ", normalized);
+  }
+
+  public JSObject getAccessTokenCacheStats() {
+    JSObject stats = new JSObject();
+    stats.put("hits", accessTokenCache.getHits());
+    stats.put("misses", accessTokenCache.getMisses());
+    stats.put("size", accessTokenCache.size());
+    return stats;
+  }
+
   private void handleSignInError(GetCredentialException e, PluginCall call) {
     Log.e(LOG_TAG, "Google Sign-In failed", e);
+    metrics.fail();
     if (e instanceof NoCredentialException) {
       call.reject(
         "No Google accounts available. Please add a Google account to your device and try again."
@@ -262,7 +428,6 @@ public class GoogleProvider implements SocialProvider {
   private JSObject handleSignInResult(GetCredentialResponse result)
     throws JSONException {
     JSObject user = new JSObject();
-    Log.d(LOG_TAG, "handleSignInResult: " + result.toString());
 
     Credential credential = result.getCredential();
     if (credential instanceof CustomCredential) {
@@ -290,7 +455,6 @@ public class GoogleProvider implements SocialProvider {
   public void logout(PluginCall call) {
     ClearCredentialStateRequest request = new ClearCredentialStateRequest();
 
-    Executor executor = Executors.newSingleThreadExecutor();
     credentialManager.clearCredentialStateAsync(
       request,
       null,
@@ -298,12 +462,15 @@ public class GoogleProvider implements SocialProvider {
       new CredentialManagerCallback<Void, ClearCredentialException>() {
         @Override
         public void onResult(Void result) {
-          context
-            .getSharedPreferences(SHARED_PREFERENCE_NAME, Context.MODE_PRIVATE)
-            .edit()
-            .clear()
-            .apply();
-          GoogleProvider.this.idToken = null;
+          tokenStore.remove(TOKEN_STORE_NAMESPACE);
+          GoogleProvider.this.session = SessionSnapshot.EMPTY;
+          GoogleProvider.this.profile = null;
+          GoogleProvider.this.accessToken = null;
+          GoogleProvider.this.accessTokenCache.clear();
+          authState.publish(
+            SessionSnapshot.EMPTY,
+            AuthStateNotifier.REASON_LOGOUT
+          );
           call.resolve();
         }
 
@@ -318,32 +485,260 @@ public class GoogleProvider implements SocialProvider {
 
   @Override
   public void getAuthorizationCode(PluginCall call) {
-    JSObject response = new JSObject();
-    if (GoogleProvider.this.idToken == null) {
+    SessionSnapshot session = GoogleProvider.this.session;
+    if (!session.hasTokens()) {
       call.reject("Not logged in to google, cannot get authorization code!");
       return;
     }
-    response.put("jwt", GoogleProvider.this.idToken);
+    if (!session.isLoggedIn()) {
+      call.reject("Google session expired, cannot get authorization code!");
+      return;
+    }
+    JSObject response = new JSObject();
+    response.put("jwt", session.getIdToken());
     call.resolve(response);
   }
 
   @Override
   public void isLoggedIn(PluginCall call) {
     call.resolve(
-      new JSObject().put("isLoggedIn", GoogleProvider.this.idToken != null)
+      new JSObject().put("isLoggedIn", GoogleProvider.this.session.isLoggedIn())
     );
   }
 
+  @Override
+  public SessionSnapshot getSession() {
+    return this.session;
+  }
+
+  @Override
+  public JSObject getCachedProfile() {
+    return this.profile;
+  }
+
+  @Override
+  public void dispose() {
+    // Holds no service binding nor SDK listener
+  }
+
+  @Override
+  public boolean canRefreshSession() {
+    // Refreshing needs the account, it cannot ask the user
+    return this.session.hasTokens() && this.accessToken != null;
+  }
+
+  @Override
+  public void refreshSession(RefreshCallback callback) {
+    refreshSession(DEFAULT_REFRESH_MARGIN_MS, callback);
+  }
+
   @Override
   public void refresh(PluginCall call) {
-    // Implement refresh logic here
-    call.reject("Not implemented");
+    JSObject options = call.getObject("options", new JSObject());
+    long minValidityMs = options.optLong(
+      "minValidityMs",
+      DEFAULT_REFRESH_MARGIN_MS
+    );
+    refreshSession(
+      minValidityMs,
+      new RefreshCallback() {
+        @Override
+        public void onRefreshed(JSObject result) {
+          call.resolve(
+            new JSObject().put("provider", "google").put("result", result)
+          );
+        }
+
+        @Override
+        public void onFailure(String message, Exception e) {
+          call.reject(message, e);
+        }
+      }
+    );
+  }
+
+  /**
+   * Keep the current tokens when both stay valid for at least
+   * {@code minValidityMs}. Otherwise renew them for the signed in account,
+   * without UI: when the user has to act the refresh fails with
+   * {@link #INTERACTION_REQUIRED} and login must be called. Concurrent
+   * refreshes share one renewal.
+   */
+  public void refreshSession(long minValidityMs, RefreshCallback callback) {
+    SessionSnapshot current = this.session;
+    AccessToken currentToken = this.accessToken;
+    if (!current.hasTokens()) {
+      callback.onFailure("Not logged in to google; Cannot refresh", null);
+      return;
+    }
+    long validUntil = System.currentTimeMillis() + minValidityMs;
+    if (
+      currentToken != null &&
+      current.getExpiresAt() > validUntil &&
+      currentToken.expires > validUntil
+    ) {
+      callback.onRefreshed(
+        createRefreshResult(current.getIdToken(), currentToken)
+      );
+      return;
+    }
+
+    synchronized (refreshLock) {
+      refreshWaiters.add(callback);
+      if (refreshWaiters.size() > 1) {
+        Log.d(LOG_TAG, "Refresh already in flight, joining it");
+        return;
+      }
+    }
+
+    try {
+      executor.execute(() -> renewSilently(current, currentToken));
+    } catch (RejectedExecutionException e) {
+      completeRefresh(
+        null,
+        "Cannot refresh google session: executor is busy",
+        e
+      );
+    }
+  }
+
+  // Runs on the auth executor. GoogleAuthUtil never shows UI, it throws
+  // UserRecoverableAuthException when the user has to sign in again
+  private void renewSilently(
+    SessionSnapshot current,
+    AccessToken previousToken
+  ) {
+    if (previousToken == null) {
+      // The account of a restored session without access token is unknown
+      completeRefresh(null, INTERACTION_REQUIRED, null);
+      return;
+    }
+    try {
+      // Otherwise GoogleAuthUtil hands back the id token it already cached
+      GoogleAuthUtil.clearToken(this.context, current.getIdToken());
+      String idToken = GoogleAuthUtil.getToken(
+        this.context,
+        new Account(previousToken.userId, "com.google"),
+        ID_TOKEN_SCOPE_PREFIX + this.clientId
+      );
+      completeRenewal(current, previousToken, idToken, previousToken.userId);
+    } catch (UserRecoverableAuthException e) {
+      completeRefresh(null, INTERACTION_REQUIRED, e);
+    } catch (Exception e) {
+      completeRefresh(
+        null,
+        "Cannot refresh google session: " + e.getMessage(),
+        e
+      );
+    }
+  }
+
+  /**
+   * Check that the new id token belongs to the signed in account, then renew
+   * the access token and complete the refresh.
+   */
+  private void completeRenewal(
+    SessionSnapshot current,
+    AccessToken previousToken,
+    String idToken,
+    String accountId
+  ) throws Exception {
+    JwtClaims claims = idTokenVerifier.verify(idToken, null);
+    String subject = current.getSubject();
+    if (
+      (subject != null && !subject.equals(claims.getSubject())) ||
+      (previousToken != null && !previousToken.userId.equals(accountId))
+    ) {
+      completeRefresh(
+        null,
+        "Google refresh returned another account, sign in again",
+        null
+      );
+      return;
+    }
+
+    if (this.scopes == null) {
+      this.scopes = DEFAULT_SCOPES;
+    }
+    if (previousToken != null) {
+      // Otherwise GoogleAuthUtil hands back the token it already cached
+      GoogleAuthUtil.clearToken(this.context, previousToken.token);
+    }
+    AccessToken accessToken = getAccessToken(accountId);
+    if (accessToken == null) {
+      completeRefresh(null, "Failed to get access token", null);
+      return;
+    }
+    accessTokenCache.putUntil(
+      accessTokenCacheKey(accountId, this.scopes),
+      accessToken,
+      accessToken.expires - ACCESS_TOKEN_EXPIRY_MARGIN_MS
+    );
+    persistState(idToken, accessToken, AuthStateNotifier.REASON_REFRESH);
+    completeRefresh(createRefreshResult(idToken, accessToken), null, null);
+  }
+
+  private static JSObject createRefreshResult(
+    String idToken,
+    AccessToken accessToken
+  ) {
+    JSObject result = new JSObject();
+    result.put("idToken", idToken);
+    result.put("accessToken", accessToken.toJSObject());
+    return result;
+  }
+
+  private void completeRefresh(
+    JSObject result,
+    String errorMessage,
+    Exception error
+  ) {
+    List<RefreshCallback> waiters;
+    synchronized (refreshLock) {
+      waiters = new ArrayList<>(refreshWaiters);
+      refreshWaiters.clear();
+    }
+    for (RefreshCallback waiter : waiters) {
+      if (result != null) {
+        waiter.onRefreshed(result);
+      } else {
+        waiter.onFailure(errorMessage, error);
+      }
+    }
   }
 
   private static class AccessToken {
 
     String token;
     String userId;
-    // Add other fields as needed (expires, isExpired, etc.)
+    long issuedAt;
+    long expires;
+
+    JSObject toJSObject() {
+      JSObject accessTokenObj = new JSObject();
+      accessTokenObj.put("token", token);
+      accessTokenObj.put("userId", userId);
+      accessTokenObj.put("expires", expires);
+      accessTokenObj.put("lastRefresh", issuedAt);
+      return accessTokenObj;
+    }
+
+    static AccessToken fromStored(Map<String, String> data) {
+      String token = data.get("accessToken");
+      String userId = data.get("accountId");
+      if (token == null || userId == null) {
+        return null;
+      }
+      try {
+        AccessToken accessToken = new AccessToken();
+        accessToken.token = token;
+        accessToken.userId = userId;
+        accessToken.issuedAt = Long.parseLong(data.get("accessTokenIssuedAt"));
+        accessToken.expires = Long.parseLong(data.get("accessTokenExpires"));
+        return accessToken;
+      } catch (NumberFormatException e) {
+        return null;
+      }
+    }
   }
 }
@@ -0,0 +1,78 @@
+package ee.forgr.capacitor.social.login;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+import ee.forgr.capacitor.social.login.helpers.TokenStore;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Moves the JSON blobs that older versions kept in SharedPreferences
+ * into the {@link TokenStore}, then clears the old preferences once the
+ * tokens are written.
+ */
+final class LegacyTokenMigration {
+
+  private LegacyTokenMigration() {}
+
+  static Map<String, String> restore(
+    Context context,
+    TokenStore tokenStore,
+    String namespace,
+    String preferenceName,
+    String preferenceKey
+  ) {
+    if (tokenStore.contains(namespace)) {
+      return tokenStore.get(namespace);
+    }
+
+    SharedPreferences preferences = context.getSharedPreferences(
+      preferenceName,
+      Context.MODE_PRIVATE
+    );
+    String data = preferences.getString(preferenceKey, null);
+    if (data == null || data.isEmpty()) {
+      return Collections.emptyMap();
+    }
+
+    try {
+      JSONObject object = new JSONObject(data);
+      Map<String, String> values = new HashMap<>();
+      Iterator<String> keys = object.keys();
+      while (keys.hasNext()) {
+        String key = keys.next();
+        if (!object.isNull(key)) {
+          values.put(key, object.getString(key));
+        }
+      }
+      tokenStore.put(namespace, values);
+      // Keep the old copy until the tokens are on disk, the migration is
+      // retried on the next start otherwise
+      if (!tokenStore.flush()) {
+        Log.w(
+          SocialLoginPlugin.LOG_TAG,
+          String.format("Keeping legacy %s login state for now", namespace)
+        );
+        return values;
+      }
+      preferences.edit().clear().apply();
+      Log.i(
+        SocialLoginPlugin.LOG_TAG,
+        String.format("Migrated %s login state to the token store", namespace)
+      );
+      return values;
+    } catch (JSONException e) {
+      Log.e(
+        SocialLoginPlugin.LOG_TAG,
+        String.format("%s restoreState: Failed to parse JSON", namespace),
+        e
+      );
+      return Collections.emptyMap();
+    }
+  }
+}
@@ -2,23 +2,110 @@ package ee.forgr.capacitor.social.login;
 
 import android.content.Intent;
 import android.os.Build;
+import android.text.TextUtils;
 import android.util.Log;
+import androidx.annotation.Nullable;
+import com.getcapacitor.JSArray;
 import com.getcapacitor.JSObject;
 import com.getcapacitor.Plugin;
 import com.getcapacitor.PluginCall;
 import com.getcapacitor.PluginMethod;
 import com.getcapacitor.annotation.CapacitorPlugin;
+import ee.forgr.capacitor.social.login.helpers.AuthExecutor;
+import ee.forgr.capacitor.social.login.helpers.AuthStateNotifier;
+import ee.forgr.capacitor.social.login.helpers.CircuitBreaker;
+import ee.forgr.capacitor.social.login.helpers.HttpJwksFetcher;
+import ee.forgr.capacitor.social.login.helpers.HttpTransport;
+import ee.forgr.capacitor.social.login.helpers.IdTokenVerifier;
+import ee.forgr.capacitor.social.login.helpers.InFlightRegistry;
+import ee.forgr.capacitor.social.login.helpers.JwksKeyStore;
+import ee.forgr.capacitor.social.login.helpers.JwtClaims;
+import ee.forgr.capacitor.social.login.helpers.LatencyHistogram;
+import ee.forgr.capacitor.social.login.helpers.LogSink;
+import ee.forgr.capacitor.social.login.helpers.LoginMetrics;
+import ee.forgr.capacitor.social.login.helpers.OkHttpTransport;
+import ee.forgr.capacitor.social.login.helpers.ProviderHolder;
+import ee.forgr.capacitor.social.login.helpers.RefreshScheduler;
+import ee.forgr.capacitor.social.login.helpers.ResilientHttpClient;
+import ee.forgr.capacitor.social.login.helpers.SessionSnapshot;
+import ee.forgr.capacitor.social.login.helpers.SharedPluginCall;
 import ee.forgr.capacitor.social.login.helpers.SocialProvider;
+import ee.forgr.capacitor.social.login.helpers.TokenStore;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.json.JSONArray;
 import org.json.JSONObject;
 
 @CapacitorPlugin(name = "SocialLogin")
 public class SocialLoginPlugin extends Plugin {
 
   public static String LOG_TAG = "CapgoSocialLogin";
+  public static final String AUTH_STATE_CHANGE_EVENT = "authStateChange";
+  static final String TOKEN_STORE_FILE = "capgo_social_login_tokens.bin";
+  private static final long TOKEN_STORE_COALESCE_MS = 250;
+  // Past this, an unfinished operation is assumed stuck and is not joined
+  private static final long IN_FLIGHT_MAX_JOIN_AGE_MS = 2 * 60 * 1000;
+  private static final long JWKS_TTL_MS = 24 * 60 * 60 * 1000;
+  private static final long JWKS_MIN_REFETCH_MS = 5 * 60 * 1000;
+  // A lost token exchange wastes the authorization code, so retry it
+  private static final int TOKEN_MAX_ATTEMPTS = 3;
+  private static final long TOKEN_INITIAL_BACKOFF_MS = 500;
+  private static final long TOKEN_MAX_BACKOFF_MS = 4 * 1000;
+  private static final long TOKEN_ATTEMPT_TIMEOUT_MS = 10 * 1000;
+  private static final long TOKEN_DEADLINE_MS = 30 * 1000;
+  private static final int BREAKER_FAILURE_THRESHOLD = 5;
+  private static final long BREAKER_OPEN_MS = 30 * 1000;
 
-  public HashMap<String, SocialProvider> socialProviderHashMap =
-    new HashMap<>();
+  static final LogSink LOG_SINK = new LogSink() {
+    @Override
+    public void warn(String message, Throwable error) {
+      Log.w(LOG_TAG, message, error);
+    }
+
+    @Override
+    public void error(String message, Throwable error) {
+      Log.e(LOG_TAG, message, error);
+    }
+  };
+
+  private final Map<String, ProviderHolder> providers =
+    new ConcurrentHashMap<>();
+
+  private final AuthExecutor authExecutor = new AuthExecutor();
+  private final LoginMetrics loginMetrics = new LoginMetrics();
+  private final InFlightRegistry inFlight = new InFlightRegistry(
+    IN_FLIGHT_MAX_JOIN_AGE_MS
+  );
+  private final AuthStateNotifier authStateNotifier = new AuthStateNotifier(
+    authExecutor.getScheduler(),
+    this::notifyAuthStateChange
+  );
+  private final RefreshScheduler refreshScheduler = new RefreshScheduler(
+    authExecutor.getScheduler()
+  );
+  private HttpTransport httpTransport;
+  private TokenStore tokenStore;
+  private JwksKeyStore jwksKeyStore;
+  private ResilientHttpClient tokenEndpointClient;
+
+  @Override
+  public void load() {
+    super.load();
+    // Start reading the saved sessions before initialize asks for them
+    try {
+      authExecutor.execute(() -> getTokenStore().preload());
+    } catch (RejectedExecutionException e) {
+      Log.w(LOG_TAG, "Cannot preload the token store", e);
+    }
+  }
 
   @PluginMethod
   public void initialize(PluginCall call) {
@@ -27,6 +114,9 @@ public class SocialLoginPlugin extends Plugin {
       return;
     }
 
+    boolean lazy = call.getBoolean("lazy", false);
+    Map<String, ProviderHolder> configured = new HashMap<>();
+
     JSObject apple = call.getObject("apple");
     if (apple != null) {
       String androidAppleRedirect = apple.getString("redirectUrl");
@@ -41,30 +131,62 @@ public class SocialLoginPlugin extends Plugin {
         return;
       }
 
-      AppleProvider appleProvider = new AppleProvider(
-        androidAppleRedirect,
-        androidAppleClientId,
-        this.getActivity(),
-        this.getContext()
+      configured.put(
+        "apple",
+        new ProviderHolder("apple", () -> {
+          AppleProvider appleProvider = new AppleProvider(
+            androidAppleRedirect,
+            androidAppleClientId,
+            this.getActivity(),
+            this.getContext(),
+            this.authExecutor,
+            this.getTokenEndpointClient(),
+            this.getTokenStore(),
+            this.loginMetrics.forProvider("apple"),
+            new IdTokenVerifier(
+              this.getJwksKeyStore(),
+              IdTokenVerifier.APPLE_JWKS_URL,
+              IdTokenVerifier.APPLE_ISSUERS,
+              androidAppleClientId
+            ),
+            this.authStateNotifier.forProvider("apple")
+          );
+          appleProvider.initialize();
+          trackIfCurrent(configured, "apple", appleProvider);
+          return appleProvider;
+        })
       );
-
-      appleProvider.initialize();
-      this.socialProviderHashMap.put("apple", appleProvider);
     }
 
     JSObject google = call.getObject("google");
     if (google != null) {
-      GoogleProvider googleProvider = new GoogleProvider(
-        this.getActivity(),
-        this.getContext()
-      );
       String googleClientId = google.getString("webClientId");
       if (googleClientId == null || googleClientId.isEmpty()) {
         call.reject("google.clientId is null or empty");
         return;
       }
-      googleProvider.initialize(googleClientId);
-      this.socialProviderHashMap.put("google", googleProvider);
+      configured.put(
+        "google",
+        new ProviderHolder("google", () -> {
+          GoogleProvider googleProvider = new GoogleProvider(
+            this.getActivity(),
+            this.getContext(),
+            this.authExecutor,
+            this.getTokenStore(),
+            this.loginMetrics.forProvider("google"),
+            new IdTokenVerifier(
+              this.getJwksKeyStore(),
+              IdTokenVerifier.GOOGLE_JWKS_URL,
+              IdTokenVerifier.GOOGLE_ISSUERS,
+              googleClientId
+            ),
+            this.authStateNotifier.forProvider("google")
+          );
+          googleProvider.initialize(googleClientId);
+          trackIfCurrent(configured, "google", googleProvider);
+          return googleProvider;
+        })
+      );
     }
 
     JSObject facebook = call.getObject("facebook");
@@ -79,108 +201,445 @@ public class SocialLoginPlugin extends Plugin {
         call.reject("facebook.clientToken is null or empty");
         return;
       }
-      FacebookProvider facebookProvider = new FacebookProvider(
-        this.getActivity()
+      configured.put(
+        "facebook",
+        new ProviderHolder("facebook", () -> {
+          FacebookProvider facebookProvider = new FacebookProvider(
+            this.getActivity(),
+            this.authExecutor,
+            this.loginMetrics.forProvider("facebook"),
+            this.authStateNotifier.forProvider("facebook")
+          );
+          facebookProvider.initialize(facebook);
+          trackIfCurrent(configured, "facebook", facebookProvider);
+          return facebookProvider;
+        })
       );
-      try {
-        facebookProvider.initialize(facebook);
-        this.socialProviderHashMap.put("facebook", facebookProvider);
-      } catch (Exception e) {
+    }
+
+    List<ProviderHolder> replaced = new ArrayList<>();
+    synchronized (this.providers) {
+      for (Map.Entry<String, ProviderHolder> entry : configured.entrySet()) {
+        ProviderHolder previous = this.providers.put(
+          entry.getKey(),
+          entry.getValue()
+        );
+        if (previous != null) {
+          refreshScheduler.untrack(entry.getKey());
+          replaced.add(previous);
+        }
+      }
+    }
+    for (ProviderHolder holder : replaced) {
+      holder.dispose();
+    }
+
+    if (lazy) {
+      JSArray preload = call.getArray("preload", new JSArray());
+      for (int i = 0; i < preload.length(); i++) {
+        ProviderHolder holder = configured.get(preload.optString(i));
+        if (holder != null) {
+          holder.start(authExecutor, null);
+        }
+      }
+      call.resolve();
+      return;
+    }
+
+    // Eager mode: create every provider concurrently, off the bridge thread
+    startAll(configured.values(), failures -> {
+      if (!failures.isEmpty()) {
         call.reject(
-          "Failed to initialize Facebook provider: " + e.getMessage()
+          String.format(
+            "Failed to initialize %s provider: %s",
+            TextUtils.join(", ", failures.keySet()),
+            failures.values().iterator().next().getMessage()
+          )
         );
         return;
       }
+      JSObject initialized = new JSObject();
+      for (ProviderHolder holder : configured.values()) {
+        initialized.put(
+          holder.getName(),
+          new JSObject().put("initMs", holder.getInitDurationMs())
+        );
+      }
+      call.resolve(new JSObject().put("providers", initialized));
+    });
+  }
+
+  private interface StartedCallback {
+    /** Failures by provider name, empty when every provider is ready. */
+    void onStarted(Map<String, Exception> failures);
+  }
+
+  /** Start every holder, then call back once each is ready or has failed. */
+  private void startAll(
+    Collection<ProviderHolder> holders,
+    StartedCallback callback
+  ) {
+    Map<String, Exception> failures = new ConcurrentHashMap<>();
+    if (holders.isEmpty()) {
+      callback.onStarted(failures);
+      return;
     }
+    AtomicInteger remaining = new AtomicInteger(holders.size());
+    for (ProviderHolder holder : holders) {
+      holder.start(
+        authExecutor,
+        new ProviderHolder.Callback() {
+          @Override
+          public void onReady(SocialProvider provider) {
+            if (remaining.decrementAndGet() == 0) {
+              callback.onStarted(failures);
+            }
+          }
 
-    call.resolve();
+          @Override
+          public void onFailure(Exception error) {
+            failures.put(holder.getName(), error);
+            if (remaining.decrementAndGet() == 0) {
+              callback.onStarted(failures);
+            }
+          }
+        }
+      );
+    }
   }
 
-  @PluginMethod
-  public void login(PluginCall call) {
+  private interface ProviderAction {
+    void run(SocialProvider provider);
+  }
+
+  /**
+   * Run the action once the provider named in the call is ready,
+   * creating it if needed. Rejects the call when it cannot be found or created.
+   */
+  private void withProvider(PluginCall call, ProviderAction action) {
     String providerStr = call.getString("provider", "");
     if (providerStr == null || providerStr.isEmpty()) {
       call.reject("provider not provided");
+      return;
     }
 
-    JSONObject options = call.getObject("options", new JSObject());
-
-    SocialProvider provider = this.socialProviderHashMap.get(providerStr);
-    if (provider == null) {
+    ProviderHolder holder = this.providers.get(providerStr);
+    if (holder == null) {
       call.reject(String.format("Cannot find provider '%s'", providerStr));
       return;
     }
 
-    provider.login(call, options);
+    holder.start(
+      authExecutor,
+      new ProviderHolder.Callback() {
+        @Override
+        public void onReady(SocialProvider provider) {
+          action.run(provider);
+        }
+
+        @Override
+        public void onFailure(Exception error) {
+          call.reject(
+            String.format(
+              "Failed to initialize %s provider: %s",
+              providerStr,
+              error.getMessage()
+            )
+          );
+        }
+      }
+    );
   }
 
-  @PluginMethod
-  public void logout(PluginCall call) {
-    String providerStr = call.getString("provider", "");
-    if (providerStr == null || providerStr.isEmpty()) {
-      call.reject("provider not provided");
-    }
+  private interface SharedAction {
+    void run(PluginCall call);
+  }
 
-    SocialProvider provider = this.socialProviderHashMap.get(providerStr);
-    if (provider == null) {
-      call.reject(String.format("Cannot find provider '%s'", providerStr));
+  /**
+   * Run the action unless an identical call (same method and options) is
+   * already running, in which case this call gets the result of that one.
+   * Only for operations without UI: a dismissed login screen gives no
+   * result, so a joined login would wait for nothing.
+   */
+  private void singleFlight(PluginCall call, SharedAction action) {
+    SharedPluginCall shared = inFlight.attach(
+      call.getMethodName() + ":" + call.getData().toString(),
+      call
+    );
+    if (shared == null) {
+      Log.d(LOG_TAG, "Joined in-flight " + call.getMethodName() + " call");
       return;
     }
+    action.run(shared);
+  }
+
+  @PluginMethod
+  public void login(PluginCall call) {
+    JSONObject options = call.getObject("options", new JSObject());
+    withProvider(call, provider -> provider.login(call, options));
+  }
 
-    provider.logout(call);
+  @PluginMethod
+  public void logout(PluginCall call) {
+    withProvider(call, provider -> provider.logout(call));
   }
 
   @PluginMethod
   public void getAuthorizationCode(PluginCall call) {
-    String providerStr = call.getString("provider", "");
-    if (providerStr == null || providerStr.isEmpty()) {
-      call.reject("provider not provided");
+    singleFlight(call, shared ->
+      withProvider(shared, provider -> provider.getAuthorizationCode(shared))
+    );
+  }
+
+  /**
+   * Claims of the current id token, decoded once when the session was
+   * stored or restored.
+   */
+  @PluginMethod
+  public void getClaims(PluginCall call) {
+    withProvider(call, provider -> {
+      JwtClaims claims = provider.getSession().getClaims();
+      if (claims == null) {
+        call.reject("No id token for this provider");
+        return;
+      }
+      JSObject result = new JSObject();
+      result.put("sub", claims.getSubject());
+      result.put("email", claims.getEmail());
+      result.put("iss", claims.getIssuer());
+      result.put("aud", new JSArray(claims.getAudience()));
+      result.put("nonce", claims.getNonce());
+      result.put("exp", claims.getExpiresAt());
+      result.put("iat", claims.getIssuedAt());
+      call.resolve(new JSObject().put("claims", result));
+    });
+  }
+
+  @PluginMethod
+  public void isLoggedIn(PluginCall call) {
+    withProvider(call, provider -> provider.isLoggedIn(call));
+  }
+
+  @PluginMethod
+  public void refresh(PluginCall call) {
+    singleFlight(call, shared ->
+      withProvider(shared, provider -> provider.refresh(shared))
+    );
+  }
+
+  /**
+   * Login state of several providers in one bridge call.
+   * {@code providers} is a list of provider names, all configured providers
+   * when omitted or set to "all".
+   */
+  @PluginMethod
+  public void getSessions(PluginCall call) {
+    List<String> names = new ArrayList<>();
+    Object requested = call.getData().opt("providers");
+    if (requested instanceof JSONArray) {
+      JSONArray array = (JSONArray) requested;
+      for (int i = 0; i < array.length(); i++) {
+        names.add(array.optString(i));
+      }
+    } else {
+      names.addAll(providers.keySet());
     }
 
-    SocialProvider provider = this.socialProviderHashMap.get(providerStr);
-    if (provider == null) {
-      call.reject(String.format("Cannot find provider '%s'", providerStr));
-      return;
+    Map<String, ProviderHolder> pending = new HashMap<>();
+    for (String name : names) {
+      ProviderHolder holder = providers.get(name);
+      if (holder != null) {
+        pending.put(name, holder);
+      }
     }
 
-    provider.getAuthorizationCode(call);
+    startAll(pending.values(), failures -> {
+      JSObject sessions = new JSObject();
+      long now = System.currentTimeMillis();
+      for (String name : names) {
+        ProviderHolder holder = pending.get(name);
+        SocialProvider provider = holder != null
+          ? holder.getIfCreated()
+          : null;
+        if (holder == null) {
+          sessions.put(name, new JSObject().put("configured", false));
+        } else if (failures.containsKey(name) || provider == null) {
+          sessions.put(
+            name,
+            new JSObject()
+              .put("configured", true)
+              .put("error", "Provider failed to initialize")
+          );
+        } else {
+          sessions.put(name, sessionToJSObject(provider, now));
+        }
+      }
+      call.resolve(new JSObject().put("sessions", sessions));
+    });
   }
 
-  @PluginMethod
-  public void isLoggedIn(PluginCall call) {
-    String providerStr = call.getString("provider", "");
-    if (providerStr == null || providerStr.isEmpty()) {
-      call.reject("provider not provided");
+  private static JSObject sessionToJSObject(SocialProvider provider, long now) {
+    SessionSnapshot session = provider.getSession();
+    JSObject result = new JSObject();
+    result.put("configured", true);
+    result.put("isLoggedIn", session.isLoggedIn(now));
+    if (session.hasTokens()) {
+      result.put("expiresAt", session.getExpiresAt());
+      result.put("issuedAt", session.getIssuedAt());
+      result.put("hasRefreshToken", session.getRefreshToken() != null);
+      result.put("userId", session.getSubject());
+    }
+    JSObject profile = provider.getCachedProfile();
+    if (profile != null) {
+      result.put("profile", profile);
     }
+    return result;
+  }
 
-    SocialProvider provider = this.socialProviderHashMap.get(providerStr);
-    if (provider == null) {
-      call.reject(String.format("Cannot find provider '%s'", providerStr));
-      return;
+  private void notifyAuthStateChange(
+    String provider,
+    SessionSnapshot session,
+    String reason
+  ) {
+    // Tokens are not sent with the event, use getAuthorizationCode to read them
+    JSObject event = new JSObject();
+    event.put("provider", provider);
+    event.put("reason", reason);
+    event.put("isLoggedIn", session.isLoggedIn());
+    if (session.hasTokens()) {
+      event.put("expiresAt", session.getExpiresAt());
+      event.put("userId", session.getSubject());
+    }
+    notifyListeners(AUTH_STATE_CHANGE_EVENT, event);
+
+    SocialProvider created = getCreatedProvider(provider);
+    if (AuthStateNotifier.REASON_LOGOUT.equals(reason) || created == null) {
+      refreshScheduler.untrack(provider);
+    } else {
+      refreshScheduler.track(provider, created);
+    }
+  }
+
+  @PluginMethod
+  public void getMetrics(PluginCall call) {
+    JSObject providerMetrics = new JSObject();
+    Map<String, LoginMetrics.Recorder> recorders = loginMetrics.getRecorders();
+    for (String name : recorders.keySet()) {
+      LoginMetrics.Recorder recorder = recorders.get(name);
+      JSObject phases = new JSObject();
+      for (LoginMetrics.Phase phase : LoginMetrics.Phase.values()) {
+        phases.put(
+          phase.getKey(),
+          histogramToJSObject(recorder.getPhase(phase))
+        );
+      }
+      JSObject paths = new JSObject();
+      Map<String, AtomicLong> pathCounts = recorder.getPaths();
+      for (String path : pathCounts.keySet()) {
+        paths.put(path, pathCounts.get(path).get());
+      }
+      providerMetrics.put(
+        name,
+        new JSObject()
+          .put("phases", phases)
+          .put("total", histogramToJSObject(recorder.getTotal()))
+          .put("failures", recorder.getFailures())
+          .put("paths", paths)
+      );
     }
 
-    provider.isLoggedIn(call);
+    JSObject response = new JSObject();
+    response.put("providers", providerMetrics);
+    response.put("executor", getAuthExecutorStats());
+    response.put("refresh", refreshScheduler.getStats());
+    response.put(
+      "inFlight",
+      new JSObject()
+        .put("running", inFlight.size())
+        .put("joined", inFlight.getJoinedCount())
+    );
+    HttpTransport transport;
+    ResilientHttpClient tokenClient;
+    synchronized (this) {
+      transport = httpTransport;
+      tokenClient = tokenEndpointClient;
+    }
+    if (transport instanceof OkHttpTransport) {
+      OkHttpTransport okHttp = (OkHttpTransport) transport;
+      response.put(
+        "http",
+        new JSObject()
+          .put("calls", okHttp.getCallsStarted())
+          .put("connectionsOpened", okHttp.getConnectionsOpened())
+          .put("pooledConnections", okHttp.getPooledConnectionCount())
+      );
+    }
+    if (tokenClient != null) {
+      CircuitBreaker breaker = tokenClient.getCircuitBreaker();
+      response.put(
+        "tokenEndpoint",
+        new JSObject()
+          .put("requests", tokenClient.getRequestCount())
+          .put("attempts", tokenClient.getAttemptCount())
+          .put("retries", tokenClient.getRetryCount())
+          .put("failures", tokenClient.getFailureCount())
+          .put("shortCircuited", tokenClient.getShortCircuitCount())
+          .put("circuit", breaker.getState().name().toLowerCase())
+          .put("circuitOpened", breaker.getOpenedCount())
+      );
+    }
+    SocialProvider google = getCreatedProvider("google");
+    if (google instanceof GoogleProvider) {
+      response.put(
+        "googleAccessTokenCache",
+        ((GoogleProvider) google).getAccessTokenCacheStats()
+      );
+    }
+    call.resolve(response);
   }
 
   @PluginMethod
-  public void refresh(PluginCall call) {
-    String provider = call.getString("provider");
-    //    if (provider.equals("facebook")) {
-    //      facebookProvider.refresh(call);
-    //    } else if (provider.equals("google")) {
-    //      googleProvider.refresh(call);
-    //    } else if (provider.equals("twitter")) {
-    //      twitterProvider.refresh(call);
-    //    } else if (provider.equals("apple")) {
-    //      appleProvider.refresh(call);
-    //    } else {
-    //      call.reject("Unsupported social login provider: " + provider);
-    //    }
+  public void resetMetrics(PluginCall call) {
+    loginMetrics.reset();
+    call.resolve();
+  }
+
+  private static JSObject histogramToJSObject(LatencyHistogram histogram) {
+    JSObject object = new JSObject();
+    object.put("count", histogram.getCount());
+    object.put("meanMs", histogram.getMeanMs());
+    object.put("p50Ms", histogram.getPercentileMs(50));
+    object.put("p90Ms", histogram.getPercentileMs(90));
+    object.put("p99Ms", histogram.getPercentileMs(99));
+    object.put("maxMs", histogram.getMaxMs());
+    return object;
+  }
+
+  /**
+   * Tracks a provider that was just created, unless another initialize
+   * replaced its holder meanwhile.
+   */
+  private void trackIfCurrent(
+    Map<String, ProviderHolder> configured,
+    String name,
+    SocialProvider provider
+  ) {
+    synchronized (providers) {
+      if (providers.get(name) == configured.get(name)) {
+        refreshScheduler.track(name, provider);
+      }
+    }
+  }
+
+  @Nullable
+  private SocialProvider getCreatedProvider(String name) {
+    ProviderHolder holder = providers.get(name);
+    return holder != null ? holder.getIfCreated() : null;
   }
 
   public void handleAppleLoginIntent(Intent intent) {
     try {
-      SocialProvider provider = socialProviderHashMap.get("apple");
+      SocialProvider provider = getCreatedProvider("apple");
       if (!(provider instanceof AppleProvider)) {
         Log.e(
           SocialLoginPlugin.LOG_TAG,
@@ -205,7 +664,7 @@ public class SocialLoginPlugin extends Plugin {
     Log.d(LOG_TAG, "SocialLoginPlugin.handleOnActivityResult called");
 
     // Handle Facebook login result
-    SocialProvider facebookProvider = socialProviderHashMap.get("facebook");
+    SocialProvider facebookProvider = getCreatedProvider("facebook");
     if (facebookProvider instanceof FacebookProvider) {
       boolean handled =
         ((FacebookProvider) facebookProvider).handleOnActivityResult(
@@ -222,4 +681,113 @@ public class SocialLoginPlugin extends Plugin {
     // Handle other providers' activity results if needed
     Log.d(LOG_TAG, "Activity result not handled by any provider");
   }
+
+  @Override
+  protected void handleOnPause() {
+    super.handleOnPause();
+    refreshScheduler.pause();
+  }
+
+  @Override
+  protected void handleOnResume() {
+    super.handleOnResume();
+    refreshScheduler.resume();
+  }
+
+  @Override
+  protected void handleOnDestroy() {
+    super.handleOnDestroy();
+    refreshScheduler.shutdown();
+    for (ProviderHolder holder : providers.values()) {
+      holder.dispose();
+    }
+    authStateNotifier.cancelAll();
+    Log.d(
+      LOG_TAG,
+      String.format(
+        "Shutting down auth executor (completed: %d, active: %d, queued: %d)",
+        authExecutor.getCompletedCount(),
+        authExecutor.getActiveCount(),
+        authExecutor.getQueuedCount()
+      )
+    );
+    // Delayed tasks such as pending token store writes still run after shutdown
+    authExecutor.shutdown();
+    synchronized (this) {
+      if (httpTransport != null) {
+        httpTransport.shutdown();
+      }
+    }
+  }
+
+  public synchronized TokenStore getTokenStore() {
+    if (tokenStore == null) {
+      tokenStore = new TokenStore(
+        new File(getContext().getNoBackupFilesDir(), TOKEN_STORE_FILE),
+        authExecutor.getScheduler(),
+        TOKEN_STORE_COALESCE_MS,
+        LOG_SINK
+      );
+    }
+    return tokenStore;
+  }
+
+  /** Replace the token store. Must be called before load. */
+  synchronized void setTokenStore(TokenStore tokenStore) {
+    this.tokenStore = tokenStore;
+  }
+
+  public synchronized JwksKeyStore getJwksKeyStore() {
+    if (jwksKeyStore == null) {
+      jwksKeyStore = new JwksKeyStore(
+        new HttpJwksFetcher(getHttpTransport()),
+        getTokenStore(),
+        JWKS_TTL_MS,
+        JWKS_MIN_REFETCH_MS,
+        LOG_SINK
+      );
+    }
+    return jwksKeyStore;
+  }
+
+  public synchronized ResilientHttpClient getTokenEndpointClient() {
+    if (tokenEndpointClient == null) {
+      tokenEndpointClient = new ResilientHttpClient(
+        getHttpTransport(),
+        authExecutor.getScheduler(),
+        new CircuitBreaker(BREAKER_FAILURE_THRESHOLD, BREAKER_OPEN_MS),
+        TOKEN_MAX_ATTEMPTS,
+        TOKEN_INITIAL_BACKOFF_MS,
+        TOKEN_MAX_BACKOFF_MS,
+        TOKEN_ATTEMPT_TIMEOUT_MS,
+        TOKEN_DEADLINE_MS
+      );
+    }
+    return tokenEndpointClient;
+  }
+
+  public synchronized HttpTransport getHttpTransport() {
+    if (httpTransport == null) {
+      httpTransport = new OkHttpTransport();
+    }
+    return httpTransport;
+  }
+
+  /**
+   * Replace the transport used for token endpoints.
+   * Must be called before initialize, providers keep the instance they were created with.
+   */
+  public synchronized void setHttpTransport(HttpTransport httpTransport) {
+    this.httpTransport = httpTransport;
+  }
+
+  public JSObject getAuthExecutorStats() {
+    JSObject stats = new JSObject();
+    stats.put("active", authExecutor.getActiveCount());
+    stats.put("queued", authExecutor.getQueuedCount());
+    stats.put("completed", authExecutor.getCompletedCount());
+    stats.put("poolSize", authExecutor.getPoolSize());
+    stats.put("largestPoolSize", authExecutor.getLargestPoolSize());
+    return stats;
+  }
 }
@@ -0,0 +1,102 @@
+package ee.forgr.capacitor.social.login.helpers;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pushes session changes of every provider to a single listener, and fires
+ * an "expired" change when a session reaches its expiry, so the app does not
+ * have to poll isLoggedIn.
+ */
+public class AuthStateNotifier {
+
+  public static final String REASON_LOGIN = "login";
+  public static final String REASON_REFRESH = "refresh";
+  public static final String REASON_LOGOUT = "logout";
+  public static final String REASON_EXPIRED = "expired";
+
+  public interface Listener {
+    void onAuthStateChange(
+      String provider,
+      SessionSnapshot session,
+      String reason
+    );
+  }
+
+  private final ScheduledExecutorService scheduler;
+  private final Listener listener;
+  private final ConcurrentMap<String, Channel> channels =
+    new ConcurrentHashMap<>();
+
+  public AuthStateNotifier(
+    ScheduledExecutorService scheduler,
+    Listener listener
+  ) {
+    this.scheduler = scheduler;
+    this.listener = listener;
+  }
+
+  public Channel forProvider(String provider) {
+    Channel channel = channels.get(provider);
+    if (channel == null) {
+      Channel created = new Channel(provider);
+      channel = channels.putIfAbsent(provider, created);
+      if (channel == null) {
+        channel = created;
+      }
+    }
+    return channel;
+  }
+
+  /** Cancel every pending expiry timer. */
+  public void cancelAll() {
+    for (Channel channel : channels.values()) {
+      channel.cancelExpiryTimer();
+    }
+  }
+
+  public class Channel {
+
+    private final String provider;
+    private ScheduledFuture<?> expiryTimer;
+
+    Channel(String provider) {
+      this.provider = provider;
+    }
+
+    /** Notify the change and watch the new session for expiry. */
+    public void publish(SessionSnapshot session, String reason) {
+      track(session);
+      listener.onAuthStateChange(provider, session, reason);
+    }
+
+    /** Watch the session for expiry without notifying (restored sessions). */
+    public synchronized void track(SessionSnapshot session) {
+      cancelExpiryTimer();
+      long delay = session.getExpiresAt() - System.currentTimeMillis();
+      if (!session.hasTokens() || delay <= 0) {
+        return;
+      }
+      try {
+        expiryTimer = scheduler.schedule(
+          () -> listener.onAuthStateChange(provider, session, REASON_EXPIRED),
+          delay,
+          TimeUnit.MILLISECONDS
+        );
+      } catch (RejectedExecutionException e) {
+        // Plugin is shutting down
+      }
+    }
+
+    synchronized void cancelExpiryTimer() {
+      if (expiryTimer != null) {
+        expiryTimer.cancel(false);
+        expiryTimer = null;
+      }
+    }
+  }
+}
@@ -0,0 +1,56 @@
+package ee.forgr.capacitor.social.login.helpers;
+
+import androidx.annotation.Nullable;
+import com.getcapacitor.PluginCall;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Single-flight registry for provider operations that show no UI. Identical
+ * calls made while one is running are attached to it and get the same result.
+ * Operations older than the join limit are considered stuck and are not
+ * joined anymore.
+ */
+public class InFlightRegistry {
+
+  private final long maxJoinAgeMs;
+  private final Map<String, SharedPluginCall> inFlight = new HashMap<>();
+  private long joinedCount;
+
+  public InFlightRegistry(long maxJoinAgeMs) {
+    this.maxJoinAgeMs = maxJoinAgeMs;
+  }
+
+  /**
+   * @return the call to run the operation with, or null when the call was
+   * attached to an operation already in flight
+   */
+  @Nullable
+  public synchronized SharedPluginCall attach(String key, PluginCall call) {
+    SharedPluginCall running = inFlight.get(key);
+    if (
+      running != null &&
+      System.currentTimeMillis() - running.getStartedAt() < maxJoinAgeMs &&
+      running.attach(call)
+    ) {
+      joinedCount++;
+      return null;
+    }
+    SharedPluginCall shared = new SharedPluginCall(call, this::remove);
+    inFlight.put(key, shared);
+    return shared;
+  }
+
+  public synchronized int size() {
+    return inFlight.size();
+  }
+
+  /** Calls that were attached to an operation instead of starting one. */
+  public synchronized long getJoinedCount() {
+    return joinedCount;
+  }
+
+  private synchronized void remove(SharedPluginCall call) {
+    inFlight.values().remove(call);
+  }
+}
@@ -0,0 +1,164 @@
+package ee.forgr.capacitor.social.login.helpers;
+
+import android.util.Log;
+import androidx.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Holds a provider that is created (and its SDK loaded) in the background,
+ * either eagerly at initialize or the first time it is needed.
+ * Callers register with {@link #start(Executor, Callback)} instead of racing
+ * the creation. A failed creation is not cached, the next start retries.
+ * Once disposed, the holder disposes its provider and cannot be started again.
+ */
+public class ProviderHolder {
+
+  private static final String LOG_TAG = "ProviderHolder";
+
+  public interface Factory {
+    SocialProvider create() throws Exception;
+  }
+
+  public interface Callback {
+    void onReady(SocialProvider provider);
+
+    void onFailure(Exception error);
+  }
+
+  private final String name;
+  private final Factory factory;
+  private final Object lock = new Object();
+  private final List<Callback> waiters = new ArrayList<>();
+  private volatile SocialProvider provider;
+  private boolean creating;
+  private boolean disposed;
+  private volatile long initDurationMs = -1;
+
+  public ProviderHolder(String name, Factory factory) {
+    this.name = name;
+    this.factory = factory;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Start creating the provider on the executor if nobody did yet.
+   * The callback, when given, is called once the provider is ready or its
+   * creation failed; at once when it is already there.
+   */
+  public void start(Executor executor, @Nullable Callback callback) {
+    SocialProvider ready;
+    boolean wasDisposed;
+    synchronized (lock) {
+      wasDisposed = disposed;
+      ready = provider;
+      if (!wasDisposed && ready == null) {
+        if (callback != null) {
+          waiters.add(callback);
+        }
+        if (creating) {
+          return;
+        }
+        creating = true;
+      }
+    }
+    if (wasDisposed) {
+      if (callback != null) {
+        callback.onFailure(disposedError());
+      }
+      return;
+    }
+    if (ready != null) {
+      if (callback != null) {
+        callback.onReady(ready);
+      }
+      return;
+    }
+    try {
+      executor.execute(this::create);
+    } catch (RejectedExecutionException e) {
+      complete(null, e);
+    }
+  }
+
+  private void create() {
+    long start = System.nanoTime();
+    try {
+      SocialProvider created = factory.create();
+      initDurationMs = (System.nanoTime() - start) / 1_000_000;
+      Log.d(
+        LOG_TAG,
+        String.format("Provider %s ready in %d ms", name, initDurationMs)
+      );
+      complete(created, null);
+    } catch (Exception e) {
+      Log.e(LOG_TAG, "Provider " + name + " failed to initialize", e);
+      complete(null, e);
+    }
+  }
+
+  private void complete(SocialProvider created, Exception error) {
+    List<Callback> callbacks;
+    SocialProvider late = null;
+    synchronized (lock) {
+      if (disposed && created != null) {
+        late = created;
+        created = null;
+        error = disposedError();
+      }
+      provider = created;
+      creating = false;
+      callbacks = new ArrayList<>(waiters);
+      waiters.clear();
+    }
+    if (late != null) {
+      // Disposed while it was being created
+      late.dispose();
+    }
+    for (Callback callback : callbacks) {
+      if (created != null) {
+        callback.onReady(created);
+      } else {
+        callback.onFailure(error);
+      }
+    }
+  }
+
+  /**
+   * Dispose the provider, or once its creation completes when it is under
+   * way. Later starts fail.
+   */
+  public void dispose() {
+    SocialProvider created;
+    synchronized (lock) {
+      if (disposed) {
+        return;
+      }
+      disposed = true;
+      created = provider;
+      provider = null;
+    }
+    if (created != null) {
+      created.dispose();
+    }
+  }
+
+  private IllegalStateException disposedError() {
+    return new IllegalStateException("Provider " + name + " was disposed");
+  }
+
+  @Nullable
+  public SocialProvider getIfCreated() {
+    return provider;
+  }
+
+  /** Time spent creating the provider, -1 until it is ready. */
+  public long getInitDurationMs() {
+    return initDurationMs;
+  }
+}
@@ -0,0 +1,13 @@
+package ee.forgr.capacitor.social.login.helpers;
+
+import androidx.annotation.Nullable;
+import com.getcapacitor.JSObject;
+
+/**
+ * Outcome of a token refresh. A single refresh can fan out to several
+ * callbacks when concurrent callers are coalesced.
+ */
+public interface RefreshCallback {
+  void onRefreshed(JSObject result);
+  void onFailure(String message, @Nullable Exception e);
+}
@@ -0,0 +1,237 @@
+package ee.forgr.capacitor.social.login.helpers;
+
+import android.util.Log;
+import com.getcapacitor.JSObject;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Refreshes the sessions of every provider ahead of their expiry.
+ * <p>
+ * A single timer serves all providers: when it fires, every session due
+ * within the coalescing window is refreshed at once. Due times are jittered,
+ * failures back off exponentially, and nothing runs while the app is in the
+ * background. On resume, sessions that are due are refreshed right away so
+ * the app's first request after resume finds fresh tokens.
+ */
+public class RefreshScheduler {
+
+  private static final String LOG_TAG = "RefreshScheduler";
+
+  private static final long LEAD_MS = 5 * 60 * 1000;
+  private static final long JITTER_MS = 60 * 1000;
+  private static final long COALESCE_WINDOW_MS = 60 * 1000;
+  private static final long MIN_INTERVAL_MS = 10 * 60 * 1000;
+  private static final long INITIAL_BACKOFF_MS = 30 * 1000;
+  private static final long MAX_BACKOFF_MS = 15 * 60 * 1000;
+
+  private static class Entry {
+
+    final SocialProvider provider;
+    long dueAt;
+    long lastRefreshAt;
+    int failures;
+    boolean refreshing;
+
+    Entry(SocialProvider provider) {
+      this.provider = provider;
+    }
+  }
+
+  private final ScheduledExecutorService scheduler;
+  private final Map<String, Entry> entries = new HashMap<>();
+  private ScheduledFuture<?> timer;
+  private boolean paused;
+  private long refreshCount;
+  private long failureCount;
+
+  public RefreshScheduler(ScheduledExecutorService scheduler) {
+    this.scheduler = scheduler;
+  }
+
+  /** Start or update tracking of the provider session. */
+  public synchronized void track(String name, SocialProvider provider) {
+    SessionSnapshot session = provider.getSession();
+    if (!provider.canRefreshSession() || !session.hasTokens()) {
+      untrack(name);
+      return;
+    }
+    Entry entry = entries.get(name);
+    if (entry == null || entry.provider != provider) {
+      entry = new Entry(provider);
+      entries.put(name, entry);
+    }
+    if (entry.refreshing) {
+      // Rescheduled once the refresh completes
+      return;
+    }
+    entry.dueAt = dueAt(entry, session);
+    reschedule();
+  }
+
+  public synchronized void untrack(String name) {
+    if (entries.remove(name) != null) {
+      reschedule();
+    }
+  }
+
+  public synchronized void pause() {
+    paused = true;
+    cancelTimer();
+  }
+
+  public void resume() {
+    List<String> due;
+    synchronized (this) {
+      paused = false;
+      due = takeDue();
+      reschedule();
+    }
+    refresh(due);
+  }
+
+  public synchronized void shutdown() {
+    paused = true;
+    cancelTimer();
+    entries.clear();
+  }
+
+  public synchronized JSObject getStats() {
+    JSObject stats = new JSObject();
+    stats.put("tracked", entries.size());
+    stats.put("refreshes", refreshCount);
+    stats.put("failures", failureCount);
+    stats.put("paused", paused);
+    return stats;
+  }
+
+  private void onTimer() {
+    List<String> due;
+    synchronized (this) {
+      timer = null;
+      if (paused) {
+        return;
+      }
+      due = takeDue();
+      reschedule();
+    }
+    refresh(due);
+  }
+
+  private List<String> takeDue() {
+    long horizon = System.currentTimeMillis() + COALESCE_WINDOW_MS;
+    List<String> due = new ArrayList<>();
+    for (Map.Entry<String, Entry> item : entries.entrySet()) {
+      Entry entry = item.getValue();
+      if (!entry.refreshing && entry.dueAt <= horizon) {
+        entry.refreshing = true;
+        due.add(item.getKey());
+      }
+    }
+    return due;
+  }
+
+  private void refresh(List<String> names) {
+    for (String name : names) {
+      Entry entry;
+      synchronized (this) {
+        entry = entries.get(name);
+      }
+      if (entry == null) {
+        continue;
+      }
+      Log.d(LOG_TAG, "Refreshing " + name + " session ahead of expiry");
+      entry.provider.refreshSession(
+        new RefreshCallback() {
+          @Override
+          public void onRefreshed(JSObject result) {
+            onRefreshDone(name, entry, true);
+          }
+
+          @Override
+          public void onFailure(String message, Exception e) {
+            Log.w(LOG_TAG, "Cannot refresh " + name + ": " + message, e);
+            onRefreshDone(name, entry, false);
+          }
+        }
+      );
+    }
+  }
+
+  private synchronized void onRefreshDone(
+    String name,
+    Entry entry,
+    boolean success
+  ) {
+    entry.refreshing = false;
+    if (entries.get(name) != entry) {
+      // Logged out or replaced meanwhile
+      return;
+    }
+    long now = System.currentTimeMillis();
+    if (success) {
+      refreshCount++;
+      entry.failures = 0;
+      entry.lastRefreshAt = now;
+      entry.dueAt = dueAt(entry, entry.provider.getSession());
+    } else {
+      failureCount++;
+      entry.failures++;
+      long backoff = Math.min(
+        MAX_BACKOFF_MS,
+        INITIAL_BACKOFF_MS << Math.min(entry.failures - 1, 16)
+      );
+      entry.dueAt = now + backoff + jitter(backoff / 4);
+    }
+    reschedule();
+  }
+
+  private long dueAt(Entry entry, SessionSnapshot session) {
+    long due = session.getExpiresAt() - LEAD_MS - jitter(JITTER_MS);
+    // Tokens that do not get a later expiry must not be refreshed in a loop
+    return Math.max(due, entry.lastRefreshAt + MIN_INTERVAL_MS);
+  }
+
+  private static long jitter(long bound) {
+    return bound > 0 ? ThreadLocalRandom.current().nextLong(bound) : 0;
+  }
+
+  private void reschedule() {
+    cancelTimer();
+    if (paused) {
+      return;
+    }
+    long next = Long.MAX_VALUE;
+    for (Entry entry : entries.values()) {
+      if (!entry.refreshing) {
+        next = Math.min(next, entry.dueAt);
+      }
+    }
+    if (next == Long.MAX_VALUE) {
+      return;
+    }
+    try {
+      timer = scheduler.schedule(
+        this::onTimer,
+        Math.max(0, next - System.currentTimeMillis()),
+        TimeUnit.MILLISECONDS
+      );
+    } catch (RejectedExecutionException e) {
+      // Plugin is shutting down
+    }
+  }
+
+  private void cancelTimer() {
+    if (timer != null) {
+      timer.cancel(false);
+      timer = null;
+    }
+  }
+}
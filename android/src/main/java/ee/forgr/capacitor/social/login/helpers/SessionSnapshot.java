@@ -0,0 +1,165 @@
+package ee.forgr.capacitor.social.login.helpers;
+
+import android.util.Log;
+import androidx.annotation.Nullable;
+
+/**
+ * Immutable view of a provider session.
+ * Built once when tokens are persisted or restored so that status checks
+ * are plain field reads instead of re-decoding the JWT every time.
+ */
+public final class SessionSnapshot {
+
+  private static final String LOG_TAG = "SessionSnapshot";
+
+  public static final SessionSnapshot EMPTY = new SessionSnapshot(
+    null,
+    null,
+    null,
+    0,
+    0,
+    null
+  );
+
+  @Nullable
+  private final String idToken;
+
+  @Nullable
+  private final String accessToken;
+
+  @Nullable
+  private final String refreshToken;
+
+  private final long expiresAt;
+  private final long issuedAt;
+
+  @Nullable
+  private final String subject;
+
+  @Nullable
+  private final JwtClaims claims;
+
+  public SessionSnapshot(
+    @Nullable String idToken,
+    @Nullable String accessToken,
+    @Nullable String refreshToken,
+    long expiresAt,
+    long issuedAt,
+    @Nullable String subject
+  ) {
+    this(
+      idToken,
+      accessToken,
+      refreshToken,
+      expiresAt,
+      issuedAt,
+      subject,
+      null
+    );
+  }
+
+  private SessionSnapshot(
+    @Nullable String idToken,
+    @Nullable String accessToken,
+    @Nullable String refreshToken,
+    long expiresAt,
+    long issuedAt,
+    @Nullable String subject,
+    @Nullable JwtClaims claims
+  ) {
+    this.idToken = idToken;
+    this.accessToken = accessToken;
+    this.refreshToken = refreshToken;
+    this.expiresAt = expiresAt;
+    this.issuedAt = issuedAt;
+    this.subject = subject;
+    this.claims = claims;
+  }
+
+  /**
+   * Build a snapshot whose expiry comes from the id token claims.
+   * An id token that cannot be decoded yields an already expired session.
+   */
+  public static SessionSnapshot fromIdToken(
+    @Nullable String idToken,
+    @Nullable String accessToken,
+    @Nullable String refreshToken
+  ) {
+    if (idToken == null || idToken.isEmpty()) {
+      return EMPTY;
+    }
+    JwtClaims claims = null;
+    try {
+      claims = JwtClaimReader.read(idToken);
+    } catch (IllegalArgumentException e) {
+      Log.e(LOG_TAG, "Cannot decode id token", e);
+    }
+    if (claims == null) {
+      return new SessionSnapshot(
+        idToken,
+        accessToken,
+        refreshToken,
+        0,
+        0,
+        null
+      );
+    }
+    return new SessionSnapshot(
+      idToken,
+      accessToken,
+      refreshToken,
+      claims.getExpiresAt() * 1000,
+      claims.getIssuedAt() * 1000,
+      claims.getSubject(),
+      claims
+    );
+  }
+
+  /** Claims of the id token, decoded once when the snapshot was built. */
+  @Nullable
+  public JwtClaims getClaims() {
+    return claims;
+  }
+
+  public boolean isLoggedIn() {
+    return isLoggedIn(System.currentTimeMillis());
+  }
+
+  public boolean isLoggedIn(long now) {
+    return (idToken != null || accessToken != null) && now < expiresAt;
+  }
+
+  public boolean hasTokens() {
+    return idToken != null || accessToken != null;
+  }
+
+  @Nullable
+  public String getIdToken() {
+    return idToken;
+  }
+
+  @Nullable
+  public String getAccessToken() {
+    return accessToken;
+  }
+
+  @Nullable
+  public String getRefreshToken() {
+    return refreshToken;
+  }
+
+  /** Expiry in epoch milliseconds, 0 when unknown. */
+  public long getExpiresAt() {
+    return expiresAt;
+  }
+
+  /** Issue time in epoch milliseconds, 0 when unknown. */
+  public long getIssuedAt() {
+    return issuedAt;
+  }
+
+  @Nullable
+  public String getSubject() {
+    return subject;
+  }
+}
@@ -0,0 +1,104 @@
+package ee.forgr.capacitor.social.login.helpers;
+
+import com.getcapacitor.JSObject;
+import com.getcapacitor.PluginCall;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Call handed to a provider on behalf of several identical plugin calls.
+ * The first resolve or reject is forwarded to every attached call,
+ * later ones are ignored.
+ */
+public class SharedPluginCall extends PluginCall {
+
+  interface CompletionListener {
+    void onComplete(SharedPluginCall call);
+  }
+
+  private final List<PluginCall> waiters = new ArrayList<>();
+  private final CompletionListener listener;
+  private final long startedAt = System.currentTimeMillis();
+  private boolean completed;
+
+  SharedPluginCall(PluginCall leader, CompletionListener listener) {
+    super(
+      null,
+      leader.getPluginId(),
+      leader.getCallbackId(),
+      leader.getMethodName(),
+      leader.getData()
+    );
+    this.waiters.add(leader);
+    this.listener = listener;
+  }
+
+  /** @return false when the operation already completed */
+  synchronized boolean attach(PluginCall call) {
+    if (completed) {
+      return false;
+    }
+    waiters.add(call);
+    if (isKeptAlive()) {
+      call.setKeepAlive(true);
+    }
+    return true;
+  }
+
+  /** Forwarded to the attached calls, the bridge only knows those. */
+  @Override
+  public void setKeepAlive(Boolean keepAlive) {
+    List<PluginCall> toUpdate;
+    synchronized (this) {
+      super.setKeepAlive(keepAlive);
+      toUpdate = new ArrayList<>(waiters);
+    }
+    for (PluginCall waiter : toUpdate) {
+      waiter.setKeepAlive(keepAlive);
+    }
+  }
+
+  long getStartedAt() {
+    return startedAt;
+  }
+
+  @Override
+  public void resolve() {
+    for (PluginCall waiter : complete()) {
+      waiter.resolve();
+    }
+  }
+
+  @Override
+  public void resolve(JSObject data) {
+    for (PluginCall waiter : complete()) {
+      waiter.resolve(data);
+    }
+  }
+
+  @Override
+  public void reject(String msg, String code, Exception ex, JSObject data) {
+    for (PluginCall waiter : complete()) {
+      waiter.reject(msg, code, ex, data);
+    }
+  }
+
+  @Override
+  public void errorCallback(String msg) {
+    reject(msg, null, null, null);
+  }
+
+  private List<PluginCall> complete() {
+    List<PluginCall> toNotify;
+    synchronized (this) {
+      if (completed) {
+        return new ArrayList<>();
+      }
+      completed = true;
+      toNotify = new ArrayList<>(waiters);
+      waiters.clear();
+    }
+    listener.onComplete(this);
+    return toNotify;
+  }
+}
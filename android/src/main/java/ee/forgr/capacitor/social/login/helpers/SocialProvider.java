@@ -1,5 +1,7 @@
 package ee.forgr.capacitor.social.login.helpers;
 
+import androidx.annotation.Nullable;
+import com.getcapacitor.JSObject;
 import com.getcapacitor.PluginCall;
 import org.json.JSONObject;
 
@@ -9,4 +11,23 @@ public interface SocialProvider {
   void getAuthorizationCode(PluginCall call);
   void isLoggedIn(PluginCall call);
   void refresh(PluginCall call);
+
+  /** Whether {@link #refreshSession} can succeed with the current session. */
+  boolean canRefreshSession();
+
+  /** Refresh the current session without a plugin call, never showing UI. */
+  void refreshSession(RefreshCallback callback);
+
+  /** Current session, read from memory. */
+  SessionSnapshot getSession();
+
+  /** Profile of the logged in user if known in memory. */
+  @Nullable
+  JSObject getCachedProfile();
+
+  /**
+   * Release service bindings and SDK listeners. Called when initialize
+   * replaces the provider and when the plugin is destroyed.
+   */
+  void dispose();
 }
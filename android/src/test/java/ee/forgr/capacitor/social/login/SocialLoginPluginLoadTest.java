@@ -0,0 +1,258 @@
+package ee.forgr.capacitor.social.login;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import androidx.appcompat.app.AppCompatActivity;
+import com.getcapacitor.Bridge;
+import com.getcapacitor.JSObject;
+import com.getcapacitor.PluginCall;
+import ee.forgr.capacitor.social.login.helpers.HttpTransport;
+import ee.forgr.capacitor.social.login.helpers.LogSink;
+import ee.forgr.capacitor.social.login.helpers.TokenStore;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 33)
+public class SocialLoginPluginLoadTest {
+
+  private ScheduledExecutorService scheduler;
+  private RecordingTokenStore store;
+  private SocialLoginPlugin plugin;
+
+  @Before
+  public void setUp() {
+    ActivityController<AppCompatActivity> controller =
+      Robolectric.buildActivity(AppCompatActivity.class);
+    controller.get().setTheme(androidx.appcompat.R.style.Theme_AppCompat);
+    AppCompatActivity activity = controller.setup().get();
+    scheduler = Executors.newSingleThreadScheduledExecutor();
+    store = new RecordingTokenStore(
+      new File(
+        activity.getNoBackupFilesDir(),
+        SocialLoginPlugin.TOKEN_STORE_FILE
+      ),
+      scheduler
+    );
+
+    Bridge bridge = mock(Bridge.class);
+    when(bridge.getContext()).thenReturn(activity);
+    when(bridge.getActivity()).thenReturn(activity);
+    plugin = new SocialLoginPlugin();
+    plugin.setBridge(bridge);
+    plugin.setHttpTransport(new OfflineTransport());
+    plugin.setTokenStore(store);
+  }
+
+  @After
+  public void tearDown() {
+    store.release.countDown();
+    plugin.handleOnDestroy();
+    scheduler.shutdownNow();
+  }
+
+  @Test
+  public void loadReturnsBeforeTheTokenStoreIsRead() throws Exception {
+    plugin.load();
+    assertEquals(1, store.preloaded.getCount());
+
+    store.release.countDown();
+    assertTrue(store.preloaded.await(10, TimeUnit.SECONDS));
+    assertFalse(store.readers.contains(Thread.currentThread()));
+  }
+
+  @Test
+  public void initializeReadsTheTokenStoreOffTheCallingThread()
+    throws Exception {
+    store.release.countDown();
+    plugin.load();
+    RecordingCall initialize = new RecordingCall(
+      "initialize",
+      new JSObject()
+        .put(
+          "apple",
+          new JSObject()
+            .put("clientId", "ee.forgr.test")
+            .put("redirectUrl", "https://example.com/apple")
+        )
+        .put(
+          "google",
+          new JSObject().put("webClientId", "test.apps.googleusercontent.com")
+        )
+    );
+    plugin.initialize(initialize);
+
+    JSObject providers = initialize.await().getJSObject("providers");
+    assertTrue(providers.has("apple"));
+    assertTrue(providers.has("google"));
+    assertFalse(store.readers.isEmpty());
+    assertFalse(store.readers.contains(Thread.currentThread()));
+  }
+
+  @Test
+  public void providersServeTheRestoredSession() throws Exception {
+    store.put("apple", appleSession());
+    store.release.countDown();
+    plugin.load();
+    plugin.initialize(
+      new RecordingCall(
+        "initialize",
+        new JSObject()
+          .put("lazy", true)
+          .put(
+            "apple",
+            new JSObject()
+              .put("clientId", "ee.forgr.test")
+              .put("redirectUrl", "https://example.com/apple")
+          )
+      )
+    );
+
+    RecordingCall isLoggedIn = new RecordingCall(
+      "isLoggedIn",
+      new JSObject().put("provider", "apple")
+    );
+    plugin.isLoggedIn(isLoggedIn);
+    assertTrue(isLoggedIn.await().getBool("isLoggedIn"));
+  }
+
+  private static Map<String, String> appleSession() {
+    Map<String, String> values = new HashMap<>();
+    values.put("idToken", unsignedIdToken());
+    values.put("accessToken", "access");
+    values.put("refreshToken", "refresh");
+    return values;
+  }
+
+  private static String unsignedIdToken() {
+    long now = System.currentTimeMillis() / 1000;
+    return (
+      encode("{\"alg\":\"none\"}") +
+      "." +
+      encode(
+        "{\"sub\":\"user-1\",\"iat\":" + now + ",\"exp\":" + (now + 3600) + "}"
+      ) +
+      ".sig"
+    );
+  }
+
+  private static String encode(String json) {
+    return Base64.getUrlEncoder()
+      .withoutPadding()
+      .encodeToString(json.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /** Holds the preload until released and records the threads reading it. */
+  private static class RecordingTokenStore extends TokenStore {
+
+    final CountDownLatch release = new CountDownLatch(1);
+    final CountDownLatch preloaded = new CountDownLatch(1);
+    final Set<Thread> readers = ConcurrentHashMap.newKeySet();
+
+    RecordingTokenStore(File file, ScheduledExecutorService scheduler) {
+      super(file, scheduler, 10_000, LogSink.NONE);
+    }
+
+    @Override
+    public void preload() {
+      readers.add(Thread.currentThread());
+      try {
+        release.await(10, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      super.preload();
+      preloaded.countDown();
+    }
+
+    @Override
+    public Map<String, String> get(String namespace) {
+      readers.add(Thread.currentThread());
+      return super.get(namespace);
+    }
+
+    @Override
+    public boolean contains(String namespace) {
+      readers.add(Thread.currentThread());
+      return super.contains(namespace);
+    }
+  }
+
+  /** Fails every request at once, the tests never reach the network. */
+  private static class OfflineTransport implements HttpTransport {
+
+    private final OkHttpClient client = new OkHttpClient.Builder()
+      .addInterceptor(chain -> {
+        throw new IOException("offline");
+      })
+      .build();
+
+    @Override
+    public Call newCall(Request request) {
+      return client.newCall(request);
+    }
+
+    @Override
+    public void shutdown() {
+      client.dispatcher().executorService().shutdown();
+    }
+  }
+
+  private static class RecordingCall extends PluginCall {
+
+    private final CompletableFuture<JSObject> result =
+      new CompletableFuture<>();
+
+    RecordingCall(String methodName, JSObject data) {
+      super(null, "SocialLogin", "test", methodName, data);
+    }
+
+    JSObject await() throws Exception {
+      return result.get(10, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void resolve() {
+      result.complete(new JSObject());
+    }
+
+    @Override
+    public void resolve(JSObject data) {
+      result.complete(data);
+    }
+
+    @Override
+    public void reject(String msg, String code, Exception ex, JSObject data) {
+      result.completeExceptionally(new AssertionError(msg, ex));
+    }
+
+    @Override
+    public void errorCallback(String msg) {
+      reject(msg, null, null, null);
+    }
+  }
+}
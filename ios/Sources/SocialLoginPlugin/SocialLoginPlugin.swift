@@ -15,7 +15,11 @@ public class SocialLoginPlugin: CAPPlugin, CAPBridgedPlugin {
         CAPPluginMethod(name: "isLoggedIn", returnType: CAPPluginReturnPromise),
         CAPPluginMethod(name: "getAuthorizationCode", returnType: CAPPluginReturnPromise),
         CAPPluginMethod(name: "getUserInfo", returnType: CAPPluginReturnPromise),
-        CAPPluginMethod(name: "initialize", returnType: CAPPluginReturnPromise)
+        CAPPluginMethod(name: "initialize", returnType: CAPPluginReturnPromise),
+        CAPPluginMethod(name: "getClaims", returnType: CAPPluginReturnPromise),
+        CAPPluginMethod(name: "getSessions", returnType: CAPPluginReturnPromise),
+        CAPPluginMethod(name: "getMetrics", returnType: CAPPluginReturnPromise),
+        CAPPluginMethod(name: "resetMetrics", returnType: CAPPluginReturnPromise)
     ]
     private let apple = AppleProvider()
     private let facebook = FacebookProvider()
@@ -202,6 +206,22 @@ public class SocialLoginPlugin: CAPPlugin, CAPBridgedPlugin {
         }
     }
 
+    @objc func getClaims(_ call: CAPPluginCall) {
+        call.unimplemented("getClaims is only available on Android")
+    }
+
+    @objc func getSessions(_ call: CAPPluginCall) {
+        call.unimplemented("getSessions is only available on Android")
+    }
+
+    @objc func getMetrics(_ call: CAPPluginCall) {
+        call.unimplemented("getMetrics is only available on Android")
+    }
+
+    @objc func resetMetrics(_ call: CAPPluginCall) {
+        call.unimplemented("resetMetrics is only available on Android")
+    }
+
     private func handleLogoutResult<T>(_ result: Result<T, Error>, call: CAPPluginCall) {
         switch result {
         case .success:
@@ -1,4 +1,18 @@
+import type { PluginListenerHandle } from "@capacitor/core";
+
 export interface InitializeOptions {
+  /**
+   * Defer creating each provider (and loading its SDK) until it is first used.
+   * Android only.
+   * @default false
+   */
+  lazy?: boolean;
+  /**
+   * Providers to create in the background right after initialize when `lazy` is set.
+   * Android only.
+   * @example ["google"]
+   */
+  preload?: ("apple" | "google" | "facebook")[];
   facebook?: {
     /**
      * Facebook App ID, provided by Facebook for web, in mobile it's set in the native files
@@ -45,6 +59,169 @@ export interface InitializeOptions {
   };
 }
 
+export interface InitializeResult {
+  /**
+   * Providers created during initialize, with the time each one took.
+   * Not set when `lazy` is enabled. Android only.
+   */
+  providers?: {
+    [provider: string]: { initMs: number };
+  };
+}
+
+export interface AuthStateChange {
+  provider: "apple" | "google" | "facebook";
+  /**
+   * What changed the session. "expired" is sent when the token expiry is reached.
+   */
+  reason: "login" | "refresh" | "logout" | "expired";
+  isLoggedIn: boolean;
+  /**
+   * Token expiry, in milliseconds since epoch
+   */
+  expiresAt?: number;
+  userId?: string;
+}
+
+export interface ProviderSession {
+  /**
+   * False when the provider was not passed to initialize
+   */
+  configured: boolean;
+  isLoggedIn?: boolean;
+  /**
+   * Token expiry, in milliseconds since epoch
+   */
+  expiresAt?: number;
+  issuedAt?: number;
+  hasRefreshToken?: boolean;
+  userId?: string;
+  /**
+   * Profile returned by the last login, when still in memory
+   */
+  profile?: any;
+  /**
+   * Set when the provider could not be initialized
+   */
+  error?: string;
+}
+
+export interface GetSessionsOptions {
+  /**
+   * Providers to report, all the configured ones when omitted
+   */
+  providers?: ("apple" | "google" | "facebook")[] | "all";
+}
+
+export interface IdTokenClaims {
+  sub?: string;
+  email?: string;
+  iss?: string;
+  aud: string[];
+  nonce?: string;
+  /**
+   * Seconds since epoch
+   */
+  exp: number;
+  iat: number;
+}
+
+export interface LatencyStats {
+  count: number;
+  meanMs: number;
+  p50Ms: number;
+  p90Ms: number;
+  p99Ms: number;
+  maxMs: number;
+}
+
+export interface ProviderMetrics {
+  /**
+   * Time spent in each login phase, measured from the previous phase
+   */
+  phases: {
+    uiLaunched: LatencyStats;
+    credentialReturned: LatencyStats;
+    tokenExchanged: LatencyStats;
+    profileFetched: LatencyStats;
+    resolved: LatencyStats;
+  };
+  /**
+   * Whole login, from the call to the resolution
+   */
+  total: LatencyStats;
+  /**
+   * Logins that were rejected or cancelled
+   */
+  failures: number;
+  /**
+   * Logins per flow variant, e.g. google `silent` / `interactive`
+   */
+  paths: {
+    [path: string]: number;
+  };
+}
+
+export interface MetricsResult {
+  providers: {
+    [provider: string]: ProviderMetrics;
+  };
+  executor?: {
+    active: number;
+    queued: number;
+    completed: number;
+    poolSize: number;
+    largestPoolSize: number;
+  };
+  refresh?: {
+    /**
+     * Sessions refreshed in the background ahead of their expiry
+     */
+    tracked: number;
+    refreshes: number;
+    failures: number;
+    /**
+     * True while the app is in the background
+     */
+    paused: boolean;
+  };
+  inFlight?: {
+    /**
+     * Operations currently running
+     */
+    running: number;
+    /**
+     * Calls that were attached to an identical running call
+     */
+    joined: number;
+  };
+  http?: {
+    calls: number;
+    connectionsOpened: number;
+    pooledConnections: number;
+  };
+  tokenEndpoint?: {
+    requests: number;
+    /**
+     * Requests sent on the network, retries included
+     */
+    attempts: number;
+    retries: number;
+    failures: number;
+    /**
+     * Requests refused at once while the circuit was open
+     */
+    shortCircuited: number;
+    circuit: "closed" | "open" | "half_open";
+    circuitOpened: number;
+  };
+  googleAccessTokenCache?: {
+    hits: number;
+    misses: number;
+    size: number;
+  };
+}
+
 export interface FacebookLoginOptions {
   /**
    * Permissions
@@ -62,6 +239,18 @@ export interface FacebookLoginOptions {
    * @description A custom nonce to use for the login request
    */
   nonce?: string;
+  /**
+   * Graph API fields of the profile to read after login
+   * @description Android only. `id`, `email`, `name` and `picture` fill `userID`, `email`, `name` and `imageURL`; other fields are returned under their Graph name.
+   * @default ["id", "name", "email", "picture.type(large)"]
+   */
+  profileFields?: string[];
+  /**
+   * Graph API edges of `/me` to read in the same request as the profile
+   * @description Android only. Each raw response is returned in `edges`.
+   * @example ["permissions", "friends"]
+   */
+  profileEdges?: string[];
 }
 
 export interface GoogleLoginOptions {
@@ -85,11 +274,29 @@ export interface GoogleLoginOptions {
    * @since 0.0.69
    * */
   grantOfflineAccess?: boolean;
+  /**
+   * Skip the silent sign-in of returning users and always show the account picker
+   * @description Android only. Useful to let the user switch accounts.
+   * @default false
+   */
+  forcePrompt?: boolean;
+  /**
+   * For refresh: keep the current tokens when both stay valid for at least this long
+   * @description Android only. In milliseconds.
+   * @default 600000
+   */
+  minValidityMs?: number;
 }
 
 export interface GoogleLoginResponse {
   accessToken: AccessToken | null;
   idToken: string | null;
+  /**
+   * How the credential was obtained on Android.
+   * `silent`: a returning user's authorized account, without the account picker.
+   * `interactive`: the Sign in with Google UI.
+   */
+  signInPath?: "silent" | "interactive";
   profile: {
     email: string | null;
     familyName: string | null;
@@ -118,6 +325,11 @@ export interface AppleProviderOptions {
    * @description state
    */
   state?: string;
+  /**
+   * Client secret to use with the refresh token, for refresh
+   * @description Android only. Kept in memory and never stored, pass it again to refresh after the app restarts.
+   */
+  clientSecret?: string;
 }
 
 export interface AppleProviderResponse {
@@ -157,12 +369,33 @@ export interface LoginResult {
   result: FacebookLoginResponse | GoogleLoginResponse | AppleProviderResponse;
 }
 
+export interface RefreshResult {
+  /**
+   * Provider
+   * @description provider the session was refreshed for
+   */
+  provider: "apple" | "google" | "facebook";
+  /**
+   * Payload
+   * @description refreshed tokens, the current ones when they were still valid
+   */
+  result: {
+    accessToken: AccessToken | null;
+    idToken: string | null;
+  };
+}
+
 export interface AccessToken {
   applicationId?: string;
   declinedPermissions?: string[];
   expires?: string;
   isExpired?: boolean;
   lastRefresh?: string;
+  /**
+   * Facebook only. Past this date a new login is needed, refresh cannot extend it.
+   */
+  dataAccessExpirationTime?: number;
+  isDataAccessExpired?: boolean;
   permissions?: string[];
   token: string;
   refreshToken?: string;
@@ -172,6 +405,18 @@ export interface AccessToken {
 export interface FacebookLoginResponse {
   accessToken: AccessToken | null;
   idToken: string | null;
+  /**
+   * Responses of the `profileEdges` requested at login, by edge
+   */
+  edges?: { [edge: string]: any };
+  /**
+   * Requested `profileFields` the Graph API did not return, usually because their permission was not granted
+   */
+  missingFields?: string[];
+  /**
+   * Graph API error message of each requested `profileEdges` that could not be read
+   */
+  missingEdges?: { [edge: string]: string };
   profile: {
     userID: string;
     email: string | null;
@@ -216,7 +461,7 @@ export interface SocialLoginPlugin {
    * Initialize the plugin
    * @description initialize the plugin with the required options
    */
-  initialize(options: InitializeOptions): Promise<void>;
+  initialize(options: InitializeOptions): Promise<InitializeResult>;
   /**
    * Login with the selected provider
    * @description login with the selected provider
@@ -244,5 +489,37 @@ export interface SocialLoginPlugin {
    * Refresh the access token
    * @description refresh the access token
    */
-  refresh(options: LoginOptions): Promise<void>;
+  refresh(options: LoginOptions): Promise<RefreshResult>;
+  /**
+   * Claims of the current id token
+   * @description read sub, email, iss, aud, nonce, exp and iat of the stored id token without decoding it in JS. Android only.
+   */
+  getClaims(options: {
+    provider: "apple" | "google" | "facebook";
+  }): Promise<{ claims: IdTokenClaims }>;
+  /**
+   * Login state of several providers at once
+   * @description get login state, token expiry and cached profile of each provider in one call. Android only.
+   */
+  getSessions(options?: GetSessionsOptions): Promise<{
+    sessions: { [provider: string]: ProviderSession };
+  }>;
+  /**
+   * Listen for session changes
+   * @description called when a provider logs in, refreshes, logs out or its session expires. Android only.
+   */
+  addListener(
+    eventName: "authStateChange",
+    listenerFunc: (change: AuthStateChange) => void,
+  ): Promise<PluginListenerHandle>;
+  /**
+   * Login latency metrics
+   * @description get the per provider, per phase login latency. Android only.
+   */
+  getMetrics(): Promise<MetricsResult>;
+  /**
+   * Reset the login latency metrics
+   * @description clear the metrics returned by getMetrics. Android only.
+   */
+  resetMetrics(): Promise<void>;
 }
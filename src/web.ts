@@ -3,6 +3,7 @@ import { WebPlugin } from "@capacitor/core";
 import type {
   SocialLoginPlugin,
   InitializeOptions,
+  InitializeResult,
   LoginOptions,
   LoginResult,
   AuthorizationCode,
@@ -13,6 +14,11 @@ import type {
   FacebookLoginOptions,
   FacebookLoginResponse,
   GoogleLoginOptions,
+  MetricsResult,
+  GetSessionsOptions,
+  ProviderSession,
+  IdTokenClaims,
+  RefreshResult,
 } from "./definitions";
 
 declare const AppleID: any;
@@ -50,7 +56,7 @@ export class SocialLoginWeb extends WebPlugin implements SocialLoginPlugin {
   private facebookAppId: string | null = null;
   private facebookScriptLoaded = false;
 
-  async initialize(options: InitializeOptions): Promise<void> {
+  async initialize(options: InitializeOptions): Promise<InitializeResult> {
     if (options.google?.webClientId) {
       this.googleClientId = options.google.webClientId;
       await this.loadGoogleScript();
@@ -70,6 +76,7 @@ export class SocialLoginWeb extends WebPlugin implements SocialLoginPlugin {
       });
     }
     // Implement initialization for other providers if needed
+    return {};
   }
 
   async login(options: LoginOptions): Promise<LoginResult> {
@@ -169,22 +176,64 @@ export class SocialLoginWeb extends WebPlugin implements SocialLoginPlugin {
     }
   }
 
-  async refresh(options: LoginOptions): Promise<void> {
+  async refresh(options: LoginOptions): Promise<RefreshResult> {
+    let login: LoginResult;
     switch (options.provider) {
       case "google":
         // For Google, we can prompt for re-authentication
-        await this.loginWithGoogle(options.options);
+        login = await this.loginWithGoogle(options.options);
         break;
       case "apple":
         // Apple doesn't provide a refresh method for web
-        console.log("Apple refresh not available on web");
-        break;
+        throw new Error("Apple refresh not available on web");
       case "facebook":
-        await this.loginWithFacebook(options.options as FacebookLoginOptions);
+        login = await this.loginWithFacebook(
+          options.options as FacebookLoginOptions,
+        );
         break;
       default:
         throw new Error(`Refresh for ${options.provider} is not implemented`);
     }
+    return {
+      provider: options.provider,
+      result: {
+        accessToken: login.result.accessToken,
+        idToken: login.result.idToken,
+      },
+    };
+  }
+
+  async getSessions(options?: GetSessionsOptions): Promise<{
+    sessions: { [provider: string]: ProviderSession };
+  }> {
+    const providers =
+      options?.providers && options.providers !== "all"
+        ? options.providers
+        : (["apple", "google", "facebook"] as const);
+    const sessions: { [provider: string]: ProviderSession } = {};
+    for (const provider of providers) {
+      try {
+        const { isLoggedIn } = await this.isLoggedIn({ provider });
+        sessions[provider] = { configured: true, isLoggedIn };
+      } catch (e) {
+        sessions[provider] = { configured: false };
+      }
+    }
+    return { sessions };
+  }
+
+  async getClaims(options: {
+    provider: "apple" | "google" | "facebook";
+  }): Promise<{ claims: IdTokenClaims }> {
+    throw new Error(`getClaims for ${options.provider} is not implemented`);
+  }
+
+  async getMetrics(): Promise<MetricsResult> {
+    return { providers: {} };
+  }
+
+  async resetMetrics(): Promise<void> {
+    return;
   }
 
   private async loginWithGoogle(